@@ -0,0 +1,45 @@
+package flutter.tflite_audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+/* Cutting a 10s, 16kHz file into windows, without inference. stridesPerWindow 1 is
+   back-to-back windows, 4 overlaps each window with the previous one by 75%. */
+
+@State(Scope.Thread)
+public class AudioFileBenchmark {
+
+    private static final int FILE_LENGTH = 10 * 16000;
+
+    @Param({"16000", "44032"})
+    public int audioLength;
+
+    @Param({"1", "4"})
+    public int stridesPerWindow;
+
+    private short [] samples;
+
+    @Setup
+    public void setUp() {
+        samples = BenchmarkData.speechLikeWindow(FILE_LENGTH, new Random(1));
+    }
+
+    @Benchmark
+    public void splice(Blackhole blackhole) {
+        AudioFile audioFile = new AudioFile(ShortBuffer.wrap(samples), audioLength, audioLength / stridesPerWindow);
+        FramePool<short []> framePool = audioFile.getFramePool();
+        audioFile.getObservable()
+                .subscribe(frame -> {
+                    blackhole.consume(frame);
+                    framePool.release(frame);
+                });
+        audioFile.splice();
+    }
+}
@@ -0,0 +1,49 @@
+package flutter.tflite_audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/* int16 to float conversion of one window, as done for every window before features
+   or inference. 16000 is 1s at 16kHz, 44032 is a Teachable Machine window. */
+
+@State(Scope.Thread)
+public class AudioProcessingBenchmark {
+
+    @Param({"8000", "16000", "44032"})
+    public int audioLength;
+
+    private final AudioProcessing audioProcessing = new AudioProcessing();
+    private short [] window;
+    private float [] window32;
+
+    @Setup
+    public void setUp() {
+        window = BenchmarkData.speechLikeWindow(audioLength, new Random(1));
+        window32 = new float [audioLength];
+    }
+
+    @Benchmark
+    public float [][] normalise() {
+        return audioProcessing.normalise(window);
+    }
+
+    @Benchmark
+    public float [][] normaliseAndTranspose() {
+        return audioProcessing.normaliseAndTranspose(window);
+    }
+
+    @Benchmark
+    public float [] normalizeBySigned16() {
+        return audioProcessing.normalizeBySigned16(window, window32);
+    }
+
+    @Benchmark
+    public float [] normalizeBySigned16_allocating() {
+        return audioProcessing.normalizeBySigned16(window);
+    }
+}
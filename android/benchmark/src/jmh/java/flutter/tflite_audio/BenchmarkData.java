@@ -0,0 +1,23 @@
+package flutter.tflite_audio;
+
+import java.util.Random;
+
+//Deterministic inputs, so runs can be compared with each other.
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    //A few harmonics with a slow envelope and some noise, at a speech-like level.
+    static short [] speechLikeWindow(int length, Random random) {
+        short [] samples = new short [length];
+        for (int i = 0; i < length; i++) {
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * i / 4000.0);
+            double voice = Math.sin(2 * Math.PI * 180 * i / 16000.0)
+                    + 0.5 * Math.sin(2 * Math.PI * 360 * i / 16000.0)
+                    + 0.25 * Math.sin(2 * Math.PI * 720 * i / 16000.0);
+            samples[i] = (short) (envelope * voice * 6000 + random.nextGaussian() * 200);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,61 @@
+package flutter.tflite_audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/* One result through label smoothing, with a result every 100ms and a 1s averaging
+   window. 12 labels is the speech commands model, 35 the full speech commands set. */
+
+@State(Scope.Thread)
+public class LabelSmoothingBenchmark {
+
+    private static final long RESULT_INTERVAL_MS = 100;
+    private static final long AVERAGE_WINDOW_MS = 1000;
+    private static final int SCORE_SETS = 64;
+
+    @Param({"4", "12", "35"})
+    public int labelCount;
+
+    @Param({LabelSmoothing.MOVING_AVERAGE, LabelSmoothing.EXPONENTIAL})
+    public String smoothingMode;
+
+    private LabelSmoothing labelSmoothing;
+    private float [][] scores;
+    private int next = 0;
+    private long timeMs = 0;
+
+    @Setup
+    public void setUp() {
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < labelCount; i++) labels.add("label_" + i);
+
+        int capacity = (int) (AVERAGE_WINDOW_MS / RESULT_INTERVAL_MS) + 2;
+        labelSmoothing = new LabelSmoothing(labels, AVERAGE_WINDOW_MS, 0.3f, 0, 0, smoothingMode, capacity);
+
+        //softmax-like outputs, with a different winner now and then
+        Random random = new Random(1);
+        scores = new float [SCORE_SETS][labelCount];
+        for (float [] set : scores) {
+            float sum = 0;
+            for (int i = 0; i < labelCount; i++) {
+                set[i] = random.nextFloat();
+                sum += set[i];
+            }
+            for (int i = 0; i < labelCount; i++) set[i] /= sum;
+        }
+    }
+
+    @Benchmark
+    public LabelSmoothing.RecognitionResult processLatestResults() {
+        timeMs += RESULT_INTERVAL_MS;
+        next = (next + 1) % SCORE_SETS;
+        return labelSmoothing.processLatestResults(scores[next], timeMs);
+    }
+}
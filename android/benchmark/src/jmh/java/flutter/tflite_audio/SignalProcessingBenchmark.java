@@ -0,0 +1,78 @@
+package flutter.tflite_audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/* Feature extraction for one window, with the default spectrogram parameters.
+
+   The plain benchmarks compute every frame, like the first window of a stream. The
+   streaming one moves each window on by a quarter of its length, so interior frames
+   come from the frame cache, like overlapping windows from the microphone. */
+
+@State(Scope.Thread)
+public class SignalProcessingBenchmark {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int N_MFCC = 20;
+    private static final int N_FFT = 2048;
+    private static final int N_MELS = 128;
+    private static final int HOP_LENGTH = 512;
+
+    @Param({"8000", "16000", "44032"})
+    public int audioLength;
+
+    private SignalProcessing signalProcessing;
+    private float [] window32;
+    private float [][] features;
+    private long windowStartSample = 0;
+
+    @Setup
+    public void setUp() {
+        signalProcessing = new SignalProcessing(SAMPLE_RATE, N_MFCC, N_FFT, N_MELS, HOP_LENGTH);
+        window32 = new AudioProcessing().normalizeBySigned16(
+                BenchmarkData.speechLikeWindow(audioLength, new Random(1)));
+
+        //frames x mel bins, as passed to the reshape methods
+        features = new float [audioLength / HOP_LENGTH + 1][N_MELS];
+        Random random = new Random(2);
+        for (float [] frame : features) {
+            for (int bin = 0; bin < frame.length; bin++) frame[bin] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public float [][] getMFCC() {
+        return signalProcessing.getMFCC(window32);
+    }
+
+    @Benchmark
+    public float [][] getMFCC_streaming() {
+        windowStartSample += audioLength / 4;
+        return signalProcessing.getMFCC(window32, windowStartSample);
+    }
+
+    @Benchmark
+    public float [][] getMelSpectrogram() {
+        return signalProcessing.getMelSpectrogram(window32);
+    }
+
+    @Benchmark
+    public float [][] getSpectrogram() {
+        return signalProcessing.getSpectrogram(window32);
+    }
+
+    @Benchmark
+    public float [][][][] reshapeTo4D() {
+        return signalProcessing.reshapeTo4D(features);
+    }
+
+    @Benchmark
+    public float [][][][] reshapeTo4DAndTranspose() {
+        return signalProcessing.reshapeTo4DAndTranspose(features);
+    }
+}
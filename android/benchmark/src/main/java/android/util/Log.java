@@ -0,0 +1,18 @@
+package android.util;
+
+/* No-op stand-in for android.util.Log, so the plugin's classes run on a plain JVM.
+   Only the methods the benchmarked classes call. */
+
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+}
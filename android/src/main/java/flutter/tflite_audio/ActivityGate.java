@@ -0,0 +1,119 @@
+package flutter.tflite_audio;
+
+import java.nio.ShortBuffer;
+
+/* Cheap activity detector that runs on the captured samples, so windows with nothing
+   in them can skip feature extraction and inference.
+
+   Samples are analysed in 10ms frames, as they arrive. A frame is active when its
+   energy is [thresholdDb] above an adaptive noise floor. Frames that are only slightly
+   above it also need a zero-crossing rate below that of broadband noise (hiss, fans),
+   which crosses zero at almost every other sample. The floor follows quieter frames
+   quickly and louder ones slowly, so steady background noise is absorbed within a few
+   seconds while speech is not. A short hangover keeps word endings and gaps between
+   syllables active.
+
+   Decisions for the last [historySamples] are kept, so a window can be checked after
+   later samples have been written, e.g. once it has waited in a queue. Windows that
+   reach further back than that count as active.
+*/
+
+public class ActivityGate {
+
+    private static final double MIN_ACTIVE_DB = -60; //dBFS. Quieter frames are never active
+    private static final double STRONG_MARGIN_DB = 10; //above the threshold, the zero-crossing rate is ignored
+    private static final double MAX_ACTIVE_ZCR = 0.35; //white noise is around 0.5
+    private static final double FLOOR_FALL = 0.5;
+    private static final double FLOOR_RISE = 0.005; //per frame, a time constant of about 2s
+    private static final int HANGOVER_FRAMES = 20;
+
+    private final int frameLength;
+    private final double thresholdDb;
+    private final boolean [] activeFrames; //ring of the latest decisions
+
+    private long framesWritten = 0;
+    private double noiseFloorDb = Double.NaN;
+    private int hangover = 0;
+
+    //current, incomplete frame
+    private double sumSquares = 0;
+    private int zeroCrossings = 0;
+    private int frameOffset = 0;
+    private short lastSample = 0;
+
+    public ActivityGate(int sampleRate, double thresholdDb, int historySamples) {
+        this.frameLength = Math.max(1, sampleRate / 100);
+        this.thresholdDb = thresholdDb;
+        this.activeFrames = new boolean [historySamples / frameLength + 2];
+    }
+
+    public synchronized void write(short [] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            addSample(data[i]);
+        }
+    }
+
+    //Reads [length] samples from the start of [data], without moving its position.
+    public synchronized void write(ShortBuffer data, int length) {
+        for (int i = 0; i < length; i++) {
+            addSample(data.get(i));
+        }
+    }
+
+    /* Whether any frame between [startSample] and [endSample] was active. Frames that have
+       not been analysed yet, like a trailing partial frame, are left out. */
+    public synchronized boolean isActive(long startSample, long endSample) {
+        long firstFrame = startSample / frameLength;
+        long lastFrame = Math.min((endSample - 1) / frameLength, framesWritten - 1);
+
+        if (firstFrame < framesWritten - activeFrames.length || lastFrame < firstFrame) {
+            return true; //nothing to go on
+        }
+        for (long frame = firstFrame; frame <= lastFrame; frame++) {
+            if (activeFrames[(int) (frame % activeFrames.length)]) return true;
+        }
+        return false;
+    }
+
+    public synchronized double getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+
+    private void addSample(short sample) {
+        sumSquares += (double) sample * sample;
+        if ((sample < 0) != (lastSample < 0)) zeroCrossings += 1;
+        lastSample = sample;
+
+        if (++frameOffset == frameLength) {
+            activeFrames[(int) (framesWritten % activeFrames.length)] = analyseFrame();
+            framesWritten += 1;
+            sumSquares = 0;
+            zeroCrossings = 0;
+            frameOffset = 0;
+        }
+    }
+
+    private boolean analyseFrame() {
+        double meanSquare = sumSquares / frameLength / (32768.0 * 32768.0);
+        double energyDb = 10 * Math.log10(meanSquare + 1e-10);
+        double zeroCrossingRate = (double) zeroCrossings / frameLength;
+
+        if (Double.isNaN(noiseFloorDb)) noiseFloorDb = energyDb;
+        double aboveFloorDb = energyDb - noiseFloorDb;
+
+        boolean isActive = energyDb > MIN_ACTIVE_DB && aboveFloorDb > thresholdDb
+                && (zeroCrossingRate < MAX_ACTIVE_ZCR || aboveFloorDb > thresholdDb + STRONG_MARGIN_DB);
+
+        noiseFloorDb += (aboveFloorDb < 0 ? FLOOR_FALL : FLOOR_RISE) * aboveFloorDb;
+
+        if (isActive) {
+            hangover = HANGOVER_FRAMES;
+            return true;
+        }
+        if (hangover > 0) {
+            hangover -= 1;
+            return true;
+        }
+        return false;
+    }
+}
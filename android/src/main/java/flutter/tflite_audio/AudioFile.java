@@ -36,76 +36,230 @@ public class AudioFile {
 
     private static final String LOG_TAG = "AudioFile";
 
+    private static final int FRAME_POOL_SIZE = 2;
+    private static final int CHUNK_SIZE = 4096;
+
     private final ShortBuffer shortBuffer;
     private final PublishSubject<short[]> subject;
-    private final AudioData audioData;
+    private final int audioLength;
+    private final int audioStride;
+    private final FramePool<short[]> framePool;
+
+    private volatile boolean isSplicing = false;
 
-    private boolean isSplicing = false;
+    //streaming only
+    private SlidingWindow slidingWindow;
+    private short[] chunkData;
+    private ByteBuffer pendingFrame;
+    private int channelCount = 1;
+    private Resampler resampler;
 
     public AudioFile(byte[] byteData, int audioLength) {
+        this(byteData, audioLength, audioLength);
+    }
+
+    public AudioFile(byte[] byteData, int audioLength, int audioStride) {
+        this(ByteBuffer.wrap(byteData).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer(), audioLength, audioStride);
+    }
+
+    //Windows are copied straight out of [samples], which can be a memory-mapped WavFile.
+    public AudioFile(ShortBuffer samples, int audioLength, int audioStride) {
 
-        shortBuffer = ByteBuffer.wrap(byteData).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        shortBuffer = samples;
         subject = PublishSubject.create();
-        audioData = new AudioData(audioLength, shortBuffer.limit());
+        framePool = FramePool.ofShorts(audioLength, FRAME_POOL_SIZE);
+        this.audioLength = audioLength;
+        this.audioStride = audioStride;
 
     }
 
+    /* Streaming: decoded audio is pushed in chunks through write() and finish(), so the file
+       is never held in memory. Windows are emitted as soon as they are complete. Only the
+       sliding window, a chunk buffer and pooled frames are allocated. */
+    public AudioFile(int audioLength, int audioStride) {
+
+        shortBuffer = null;
+        subject = PublishSubject.create();
+        framePool = FramePool.ofShorts(audioLength, FRAME_POOL_SIZE);
+        this.audioLength = audioLength;
+        this.audioStride = audioStride;
+
+        slidingWindow = new SlidingWindow(audioLength, audioStride, framePool);
+        chunkData = new short[CHUNK_SIZE];
+        pendingFrame = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+        isSplicing = true;
+    }
+
     public Observable<short[]> getObservable() {
         return (Observable<short[]>) this.subject;
     }
 
+    //Emitted frames can be released back to this pool once inference is done.
+    public FramePool<short[]> getFramePool() {
+        return this.framePool;
+    }
+
+    public boolean isSplicing() {
+        return isSplicing;
+    }
+
+    /* Streaming: resamples everything written from now on from [sampleRate] to
+       [targetSampleRate]. Can be called before every write, the filter is only built
+       when the rate changes. */
+    public void setSampleRate(int sampleRate, int targetSampleRate) {
+        if (resampler != null && resampler.getInputRate() == sampleRate) return;
+        if (resampler != null) resampler.flush(this::emit);
+        resampler = sampleRate == targetSampleRate ? null : new Resampler(sampleRate, targetSampleRate);
+    }
+
+    /* Streaming: interleaved audio written from now on has [channelCount] channels and is
+       averaged to mono while it is copied out of the decoder's buffer. */
+    public void setChannelCount(int channelCount) {
+        if (channelCount < 1) {
+            throw new IllegalArgumentException("Channel count must be at least 1. Received: " + channelCount);
+        }
+        if (channelCount == this.channelCount) return;
+        this.channelCount = channelCount;
+        pendingFrame = ByteBuffer.allocate(2 * channelCount).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /* Streaming: consumes 16 bit little endian PCM from [pcm16]'s position to its limit.
+       A frame split across two chunks is carried over. */
+    public void write(ByteBuffer pcm16) {
+        if (!isSplicing) return;
+        ByteBuffer data = pcm16.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        if (pendingFrame.position() > 0) {
+            while (pendingFrame.hasRemaining() && data.hasRemaining()) {
+                pendingFrame.put(data.get());
+            }
+            if (pendingFrame.hasRemaining()) return;
+            pendingFrame.flip();
+            downmix(pendingFrame.asShortBuffer(), 1);
+            pendingFrame.clear();
+            resample(chunkData, 0, 1);
+        }
+
+        ShortBuffer samples = data.asShortBuffer();
+        write(samples);
+
+        data.position(data.position() + 2 * samples.position());
+        if (isSplicing) pendingFrame.put(data);
+    }
+
+    //Streaming: consumes interleaved samples from [samples]' position to its limit, e.g. a WavFile.
+    //A trailing partial frame is left in [samples].
+    public void write(ShortBuffer samples) {
+        while (samples.remaining() >= channelCount && isSplicing) {
+            int length = Math.min(chunkData.length, samples.remaining() / channelCount);
+            downmix(samples, length);
+            resample(chunkData, 0, length);
+        }
+    }
+
+    //Reads [frames] interleaved frames from [samples] into chunkData as mono.
+    private void downmix(ShortBuffer samples, int frames) {
+        if (channelCount == 1) {
+            samples.get(chunkData, 0, frames);
+            return;
+        }
+        for (int i = 0; i < frames; i++) {
+            int sum = 0;
+            for (int channel = 0; channel < channelCount; channel++) {
+                sum += samples.get();
+            }
+            chunkData[i] = (short) (sum / channelCount);
+        }
+    }
+
+    private void resample(short[] data, int offset, int length) {
+        if (resampler == null) emit(data, offset, length);
+        else resampler.process(data, offset, length, this::emit);
+    }
+
+    private void emit(short[] data, int offset, int length) {
+        slidingWindow.write(data, offset, length, frame -> subject.onNext(frame));
+    }
+
+    //Streaming: pads the final window if needed, then completes.
+    public void finish() {
+        if (!isSplicing) return;
+        if (resampler != null) resampler.flush(this::emit);
+        slidingWindow.flush(frame -> subject.onNext(frame));
+        Log.d(LOG_TAG, "Number of windows: " + slidingWindow.getWindowCount());
+        stop();
+    }
+
     public void stop() {
         isSplicing = false;
         subject.onComplete();
     }
 
     public void splice() {
+        if (audioStride != audioLength) {
+            spliceWithStride();
+            return;
+        }
+
         isSplicing = true;
 
-        for (int i = 0; i < shortBuffer.limit(); i++) {
+        //window boundaries are known upfront, so each window is a single bulk copy
+        int fileSize = shortBuffer.limit();
+        int fullWindows = fileSize / audioLength;
+        int remainingSamples = fileSize % audioLength;
+        boolean requirePadding = requiresPadding(remainingSamples);
+        int numOfInferences = requirePadding ? fullWindows + 1 : fullWindows;
 
-            short dataPoint = shortBuffer.get(i);
+        for (int window = 0; window < fullWindows && isSplicing; window++) {
+            short[] frame = framePool.acquire();
+            shortBuffer.position(window * audioLength);
+            shortBuffer.get(frame, 0, audioLength);
+            Log.d(LOG_TAG, "Inference count: " + (window + 1) + "/" + numOfInferences);
+            subject.onNext(frame);
+        }
 
-            if (!isSplicing) {
-                subject.onComplete();
-                break;
-            }
+        if (requirePadding && isSplicing) {
+            Log.d(LOG_TAG, "Missing samples found in short audio chunk..");
+            short[] frame = framePool.acquire();
+            shortBuffer.position(fullWindows * audioLength);
+            shortBuffer.get(frame, 0, remainingSamples);
+            new AudioProcessing().addSilence(audioLength - remainingSamples, frame, remainingSamples);
+            Log.d(LOG_TAG, "Inference count: " + numOfInferences + "/" + numOfInferences);
+            subject.onNext(frame);
+        } else if (remainingSamples > 0) {
+            Log.d(LOG_TAG, "Under threshold. Padding not required");
+        }
 
-            switch (audioData.getState(i)) {
-                case "append":
-                    audioData
-                        .append(dataPoint);
-                break;
-                case "recognise":
-                    Log.d(LOG_TAG, "Recognising");
-                    audioData
-                        .append(dataPoint)
-                        .displayInference()
-                        .emit(data -> subject.onNext(data))
-                        .reset();
-                    break;
-                case "finalise":
-                    Log.d(LOG_TAG, "Finalising");
-                    audioData
-                        .append(dataPoint)
-                        .displayInference()
-                        .emit(data -> subject.onNext(data));
-                    stop();
-                    break;
-                case "padAndFinalise":
-                    Log.d(LOG_TAG, "Padding and finalising");
-                    audioData
-                        .append(dataPoint)
-                        .padSilence(i)
-                        .displayInference()
-                        .emit(data -> subject.onNext(data));
-                    stop();
-                    break;
-         
-                default:
-                    throw new AssertionError("Incorrect state when preprocessing");
-            }
+        if (isSplicing) stop();
+    }
+
+    //Only pads a final partial window that is mostly there.
+    private boolean requiresPadding(int remainingSamples) {
+        if (remainingSamples == 0) return false;
+        double missingSamplesRatio = (double) (audioLength - remainingSamples) / (double) audioLength;
+        return missingSamplesRatio < SlidingWindow.MISSING_SAMPLE_THRESHOLD;
+    }
+
+    //Overlapping windows: feeds the file through a sliding window, one stride at a time
+    public void spliceWithStride() {
+        isSplicing = true;
+
+        SlidingWindow slidingWindow = new SlidingWindow(audioLength, audioStride, framePool);
+        short[] strideData = new short[audioStride];
+        int fileSize = shortBuffer.limit();
+
+        for (int offset = 0; offset < fileSize && isSplicing; offset += audioStride) {
+            int length = Math.min(audioStride, fileSize - offset);
+            shortBuffer.position(offset);
+            shortBuffer.get(strideData, 0, length);
+            slidingWindow.write(strideData, 0, length, data -> subject.onNext(data));
+        }
+
+        if (isSplicing) {
+            slidingWindow.flush(data -> subject.onNext(data));
         }
+        Log.d(LOG_TAG, "Number of windows: " + slidingWindow.getWindowCount());
+        stop();
     }
 
 }
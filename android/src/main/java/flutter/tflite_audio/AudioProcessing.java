@@ -2,6 +2,7 @@ package flutter.tflite_audio;
 
 import android.util.Log;
 
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
@@ -73,6 +74,27 @@ public class AudioProcessing {
 	}
 
 
+    //Writes straight into a model input. float[1][n] and float[n][1] share the same flat layout,
+    //so transposing raw audio needs no extra work.
+    public void normalise(short [] inputBuffer16, FloatBuffer dst){
+        final float maxRes16 = (float) Math.pow(2, 15) -1; //outputs 32767.0f
+
+        for (int i = 0; i < inputBuffer16.length; ++i) {
+            dst.put(inputBuffer16[i] / maxRes16);
+        }
+    }
+
+
+    public float [] normalizeBySigned16(short [] inputBuffer16, float [] inputBuffer32){
+        final float maxRes16 = (float) Math.pow(2, 15) -1; //outputs 32767.0f
+
+        for (int i = 0; i < inputBuffer16.length; ++i)
+            inputBuffer32[i] = inputBuffer16[i] / maxRes16;
+
+        return inputBuffer32;
+    }
+
+
     public float [] normalizeBySigned16(short [] inputBuffer16){
         final float maxRes16 = (float) Math.pow(2, 15) -1; //outputs 32767.0f
         float inputBuffer32[] = new float[inputBuffer16.length];
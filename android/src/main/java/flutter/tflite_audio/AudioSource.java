@@ -0,0 +1,136 @@
+package flutter.tflite_audio;
+
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/* An opened audio file and the cheapest way to turn it into model-rate mono windows.
+
+   - 16 bit mono WAV/PCM at the model's rate: windows are sliced out of the mapped file.
+   - Other 16 bit WAV/PCM: the mapped samples are downmixed and resampled while streaming.
+   - Anything else: decoded with MediaDecoder while streaming.
+
+   Usage: createAudioFile(), subscribe to it, then read(). read() runs on the calling thread
+   and returns once the file has been consumed or stopped.
+*/
+
+public class AudioSource {
+
+    private static final String LOG_TAG = "Audio_Source";
+
+    private final String path;
+    private final int sampleRate;
+    private final WavFile wavFile;
+    private final AssetFileDescriptor fileDescriptor;
+    private final long startOffset;
+    private final long declaredLength;
+
+    private AudioSource(String path, int sampleRate, WavFile wavFile,
+                        AssetFileDescriptor fileDescriptor, long startOffset, long declaredLength) {
+        this.path = path;
+        this.sampleRate = sampleRate;
+        this.wavFile = wavFile;
+        this.fileDescriptor = fileDescriptor;
+        this.startOffset = startOffset;
+        this.declaredLength = declaredLength;
+    }
+
+    /* [path] is only used to recognise WAV and raw PCM. [sampleRate] is the model's rate,
+       which raw PCM is assumed to be in. Takes ownership of [fileDescriptor]. */
+    public static AudioSource open(AssetFileDescriptor fileDescriptor, long startOffset, long declaredLength,
+                                   String path, int sampleRate) throws IOException {
+        WavFile wavFile = mapWavFile(fileDescriptor, startOffset, declaredLength, path, sampleRate);
+        if (wavFile != null) {
+            fileDescriptor.close(); //the mapping stays valid
+            return new AudioSource(path, sampleRate, wavFile, null, 0, 0);
+        }
+        return new AudioSource(path, sampleRate, null, fileDescriptor, startOffset, declaredLength);
+    }
+
+    //16 bit WAV and raw PCM skip the decoder. Returns null for anything else.
+    private static WavFile mapWavFile(AssetFileDescriptor fileDescriptor, long startOffset, long declaredLength,
+                                      String path, int sampleRate) {
+        boolean isWav = WavFile.isWav(path);
+        if (!isWav && !WavFile.isPcm(path)) {
+            return null;
+        }
+
+        try (FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            return WavFile.map(inputStream.getChannel(), startOffset, declaredLength, isWav, sampleRate);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.d(LOG_TAG, "Falling back to decoder: " + e);
+            return null;
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    //Windows of this file can be sliced in place, without streaming
+    private boolean isInPlace() {
+        return wavFile != null && wavFile.getSampleRate() == sampleRate && wavFile.getChannelCount() == 1;
+    }
+
+    public AudioFile createAudioFile(int audioLength, int audioStride) {
+        return isInPlace()
+                ? new AudioFile(wavFile.getSamples(), audioLength, audioStride)
+                : new AudioFile(audioLength, audioStride);
+    }
+
+    //Feeds the whole file through [file], which must come from createAudioFile().
+    public void read(AudioFile file) {
+        if (isInPlace()) {
+            file.splice();
+        } else if (wavFile != null) {
+            readWav(file);
+        } else {
+            readDecoded(file);
+        }
+    }
+
+    //Downmixed and resampled to the model's format while streaming, instead of slicing the mapped samples.
+    private void readWav(AudioFile file) {
+        Log.d(LOG_TAG, "Streaming audio file at " + wavFile.getSampleRate() + " Hz, "
+                + wavFile.getChannelCount() + " channels..");
+        file.setChannelCount(wavFile.getChannelCount());
+        file.setSampleRate(wavFile.getSampleRate(), sampleRate);
+        file.write(wavFile.getSamples());
+        file.finish();
+    }
+
+    //Decoding and recognition are interleaved, so the first result arrives once the first window
+    //is decoded, and only a few windows of audio are held in memory at any time.
+    private void readDecoded(AudioFile file) {
+        int chunkCount = 0;
+        try {
+            MediaDecoder decoder = new MediaDecoder(fileDescriptor, startOffset, declaredLength);
+            try {
+                //the output format is only known once the codec has produced audio
+                while (file.isSplicing() && decoder.readByteData(chunk -> {
+                    file.setChannelCount(decoder.getChannelCount());
+                    file.setSampleRate(decoder.getSampleRate(), sampleRate);
+                    file.write(chunk);
+                })) {
+                    chunkCount += 1;
+                }
+            } finally {
+                decoder.release();
+            }
+        } finally {
+            close();
+        }
+        Log.d(LOG_TAG, "Decoded chunks: " + chunkCount);
+        file.finish();
+    }
+
+    private void close() {
+        try {
+            fileDescriptor.close();
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "Failed to close audio file: " + e);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package flutter.tflite_audio;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/* Recognises a list of files on a pool of workers.
+
+   Each worker holds a WindowRecognizer (its own interpreter, feature cache and buffers) and
+   pulls the next file from a shared index until the list is exhausted, so a long file
+   never holds up the others. Files are opened, decoded and recognised on the worker's
+   thread, so throughput scales with the number of workers until the cores are busy.
+
+   Results arrive in the order they are produced and are tagged with the file's index,
+   its path and the window's offset in samples, so files can interleave.
+*/
+
+public class BatchRecognition {
+
+    private static final String LOG_TAG = "Batch_Recognition";
+
+    public interface SourceOpener {
+        AudioSource open(String path) throws IOException;
+    }
+
+    //Called from worker threads.
+    public interface Listener {
+        void onResult(Map<String, Object> result);
+        void onComplete();
+    }
+
+    private final List<String> paths;
+    private final int numOfWorkers;
+    private final int audioLength;
+    private final int audioStride;
+    private final int sampleRate;
+    private final SourceOpener sourceOpener;
+    private final Supplier<WindowRecognizer> recognizerFactory;
+    private final Consumer<WindowRecognizer> recognizerRecycler;
+    private final Supplier<LabelSmoothing> smoothingFactory; //null for raw scores
+    private final Listener listener;
+
+    private final AtomicInteger nextFile = new AtomicInteger();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final Set<AudioFile> activeFiles = ConcurrentHashMap.newKeySet();
+    private volatile boolean isStopped = false;
+    private ExecutorService executor;
+
+    public BatchRecognition(List<String> paths, int numOfWorkers, int audioLength, int audioStride, int sampleRate,
+                            SourceOpener sourceOpener, Supplier<WindowRecognizer> recognizerFactory,
+                            Consumer<WindowRecognizer> recognizerRecycler, Supplier<LabelSmoothing> smoothingFactory,
+                            Listener listener) {
+        this.paths = paths;
+        this.numOfWorkers = Math.max(1, Math.min(numOfWorkers, paths.size()));
+        this.audioLength = audioLength;
+        this.audioStride = audioStride;
+        this.sampleRate = sampleRate;
+        this.sourceOpener = sourceOpener;
+        this.recognizerFactory = recognizerFactory;
+        this.recognizerRecycler = recognizerRecycler;
+        this.smoothingFactory = smoothingFactory;
+        this.listener = listener;
+    }
+
+    public int getNumOfWorkers() {
+        return numOfWorkers;
+    }
+
+    public void start() {
+        Log.d(LOG_TAG, "Recognising " + paths.size() + " files with " + numOfWorkers + " workers");
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(numOfWorkers,
+                runnable -> new Thread(runnable, "BatchRecognition-" + threadCount.incrementAndGet()));
+        activeWorkers.set(numOfWorkers);
+        for (int i = 0; i < numOfWorkers; i++) {
+            executor.execute(this::work);
+        }
+        executor.shutdown();
+    }
+
+    //Files that are being recognised stop at their current window. Queued files are skipped.
+    public void stop() {
+        isStopped = true;
+        for (AudioFile file : activeFiles) {
+            file.stop();
+        }
+    }
+
+    private void work() {
+        try {
+            WindowRecognizer recognizer = recognizerFactory.get();
+            try {
+                int fileIndex;
+                while (!isStopped && (fileIndex = nextFile.getAndIncrement()) < paths.size()) {
+                    recogniseFile(fileIndex, recognizer);
+                }
+            } finally {
+                recognizerRecycler.accept(recognizer);
+            }
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Worker failed: " + e);
+        } finally {
+            if (activeWorkers.decrementAndGet() == 0) {
+                Log.d(LOG_TAG, "Batch recognition finished");
+                listener.onComplete();
+            }
+        }
+    }
+
+    private void recogniseFile(int fileIndex, WindowRecognizer recognizer) {
+        String path = paths.get(fileIndex);
+        AudioFile file = null;
+
+        try {
+            AudioSource source = sourceOpener.open(path);
+            file = source.createAudioFile(audioLength, audioStride);
+            activeFiles.add(file);
+            if (isStopped) file.stop();
+
+            FramePool<short[]> framePool = file.getFramePool();
+            LabelSmoothing labelSmoothing = smoothingFactory == null ? null : smoothingFactory.get();
+            FileWindows windows = new FileWindows();
+            recognizer.reset();
+
+            file.getObservable()
+                    .subscribe(frame -> {
+                        long windowIndex = windows.count++;
+                        long startTime = SystemClock.elapsedRealtime();
+                        float [] outputScores = recognizer.recognise(frame, windowIndex);
+                        long inferenceTime = SystemClock.elapsedRealtime() - startTime;
+                        framePool.release(frame);
+                        if (outputScores != null) {
+                            publishResult(fileIndex, path, windowIndex, outputScores, labelSmoothing, inferenceTime);
+                        }
+                    });
+            source.read(file);
+            Log.d(LOG_TAG, "Recognised " + path + ": " + windows.count + " windows");
+
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Failed to recognise " + path + ": " + e);
+            Map<String, Object> result = createResult(fileIndex, path, 0);
+            result.put("error", e.toString());
+            listener.onResult(result);
+        } finally {
+            if (file != null) activeFiles.remove(file);
+        }
+    }
+
+    private static final class FileWindows {
+        long count = 0;
+    }
+
+    private void publishResult(int fileIndex, String path, long windowIndex, float [] outputScores,
+                               LabelSmoothing labelSmoothing, long inferenceTime) {
+        long windowOffset = windowIndex * audioStride;
+        Map<String, Object> result = createResult(fileIndex, path, windowOffset);
+
+        if (labelSmoothing != null) {
+            long sampleTimeMs = (windowOffset + audioLength) * 1000 / sampleRate;
+            result.put("recognitionResult", labelSmoothing.processLatestResults(outputScores, sampleTimeMs).foundCommand);
+        } else {
+            result.put("recognitionResult", Arrays.toString(outputScores));
+        }
+        result.put("inferenceTime", inferenceTime);
+        listener.onResult(result);
+    }
+
+    private Map<String, Object> createResult(int fileIndex, String path, long windowOffset) {
+        Map<String, Object> result = new HashMap<>(); //handed to the event channel, so one per result
+        result.put("fileId", fileIndex);
+        result.put("filePath", path);
+        result.put("windowOffset", windowOffset);
+        result.put("hasPermission", true);
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+/* Second stage of a cascaded recognition.
+
+   A small first-stage model runs on every window. Only when its score crosses
+   [threshold] does the heavier second-stage model run, on the same window plus
+   [lookback] samples before it, taken from the capture history. The onset of a word
+   usually falls before the window that triggered, so the lookback gives the second
+   stage the whole of it.
+
+   A trigger is ignored while the audio it would cover still overlaps the previous
+   trigger's, so one event does not run the second stage on every overlapping window.
+*/
+
+public class Cascade {
+
+    private static final String LOG_TAG = "Cascade";
+
+    private final WindowRecognizer recognizer;
+    private final SampleHistory history;
+    private final float threshold;
+    private final int triggerIndex; //-1 triggers on any label
+    private final int audioLength;
+    private final int audioStride;
+    private final int lookback;
+    private final short [] input;
+
+    private long nextTriggerSample = Long.MIN_VALUE;
+    private long triggerCount = 0;
+
+    //[recognizer] runs on the second-stage model, with windows of audioLength + lookback.
+    public Cascade(WindowRecognizer recognizer, SampleHistory history, float threshold, int triggerIndex,
+                   int audioLength, int audioStride, int lookback) {
+        this.recognizer = recognizer;
+        this.history = history;
+        this.threshold = threshold;
+        this.triggerIndex = triggerIndex;
+        this.audioLength = audioLength;
+        this.audioStride = audioStride;
+        this.lookback = lookback;
+        this.input = new short [audioLength + lookback];
+    }
+
+    public WindowRecognizer getRecognizer() {
+        return recognizer;
+    }
+
+    public long getTriggerCount() {
+        return triggerCount;
+    }
+
+    public boolean shouldTrigger(float [] firstStageScores, long windowIndex) {
+        long windowStart = windowIndex * audioStride;
+        if (windowStart - lookback < nextTriggerSample) return false;
+        return getScore(firstStageScores) >= threshold;
+    }
+
+    /* Runs the second stage on the window and its lookback. Returns null when the history
+       no longer holds them, e.g. after windows were dropped. Scores are overwritten by
+       the next call. */
+    public float [] recognise(long windowIndex) {
+        long windowEnd = windowIndex * audioStride + audioLength;
+        long inputStart = windowEnd - input.length;
+        nextTriggerSample = windowEnd;
+
+        if (!history.read(inputStart, input)) {
+            Log.d(LOG_TAG, "Lookback no longer available for window " + windowIndex);
+            return null;
+        }
+        triggerCount += 1;
+        return recognizer.recognise(input, windowIndex);
+    }
+
+    private float getScore(float [] scores) {
+        if (triggerIndex >= 0) return scores[triggerIndex];
+
+        float max = scores[0];
+        for (float score : scores) {
+            if (score > max) max = score;
+        }
+        return max;
+    }
+}
@@ -0,0 +1,65 @@
+package flutter.tflite_audio;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* CPU execution options for every interpreter of a loaded model.
+
+   Models differ in which settings run fastest, so they are passed through from loadModel():
+    - useXNNPACK: the XNNPACK delegate for float operators (on by default).
+    - allowFp16: lets XNNPACK run float32 models in float16 on CPUs that support it.
+    - cancellable: running invocations can be cancelled when recognition is stopped.
+    - allowBufferHandleOutput: outputs may stay in delegate buffers instead of being copied
+      back. Only delegates that support buffer handles make use of it.
+*/
+
+public class CpuOptions {
+
+    private final int numThreads;
+    private final boolean useXNNPACK;
+    private final boolean allowFp16;
+    private final boolean cancellable;
+    private final boolean allowBufferHandleOutput;
+
+    public CpuOptions(int numThreads, boolean useXNNPACK, boolean allowFp16, boolean cancellable,
+                      boolean allowBufferHandleOutput) {
+        this.numThreads = numThreads;
+        this.useXNNPACK = useXNNPACK;
+        this.allowFp16 = allowFp16;
+        this.cancellable = cancellable;
+        this.allowBufferHandleOutput = allowBufferHandleOutput;
+    }
+
+    public boolean isCancellable() {
+        return cancellable;
+    }
+
+    public Interpreter.Options toInterpreterOptions() {
+        Interpreter.Options tfliteOptions = new Interpreter.Options();
+        tfliteOptions.setNumThreads(numThreads);
+        tfliteOptions.setUseXNNPACK(useXNNPACK);
+        tfliteOptions.setAllowFp16PrecisionForFp32(allowFp16);
+        tfliteOptions.setCancellable(cancellable);
+        tfliteOptions.setAllowBufferHandleOutput(allowBufferHandleOutput);
+        return tfliteOptions;
+    }
+
+    //Reported back to Dart. FP16 only applies through XNNPACK, so it is off without it.
+    public Map<String, Object> toMap() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("numThreads", numThreads);
+        options.put("useXNNPACK", useXNNPACK);
+        options.put("allowFp16", useXNNPACK && allowFp16);
+        options.put("cancellable", cancellable);
+        options.put("allowBufferHandleOutput", allowBufferHandleOutput);
+        return options;
+    }
+
+    //Part of the model cache key, as interpreters with other options are different instances.
+    @Override
+    public String toString() {
+        return numThreads + "|" + useXNNPACK + "|" + allowFp16 + "|" + cancellable + "|" + allowBufferHandleOutput;
+    }
+}
@@ -0,0 +1,200 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+/* Everything about feature extraction that only depends on the spectrogram parameters.
+
+   The mel filterbank and DCT-II basis are built once and shared by every window
+   (and every thread), as a plan is immutable. Each mel band only overlaps a few
+   FFT bins, so the filterbank only stores the non-zero run of each band.
+
+   Values follow JLibrosa, so models trained against the previous output still match:
+   - Slaney mel scale with area normalisation, from 0 Hz to sampleRate/2
+   - orthonormal DCT-II
+   - MFCC always uses a 2048-point FFT, since JLibrosa's generateMFCCFeatures
+     never passes nFFT through. nFFT only applies to (mel) spectrograms.
+*/
+
+public class FeaturePlan {
+
+    private static final String LOG_TAG = "Feature_Plan";
+    public static final int MFCC_FFT_SIZE = 2048;
+
+    //Slaney mel scale: linear below 1 kHz, logarithmic above.
+    private static final double F_SP = 200.0 / 3;
+    private static final double MIN_LOG_HZ = 1000.0;
+    private static final double MIN_LOG_MEL = MIN_LOG_HZ / F_SP;
+    private static final double LOG_STEP = Math.log(6.4) / 27.0;
+
+    private final int sampleRate;
+    private final int nMFCC;
+    private final int nFFT;
+    private final int nMels;
+    private final int hopLength;
+
+    private final MelFilterbank melFilterbank;
+    private final MelFilterbank mfccFilterbank;
+    private final float[][] dctBasis;
+
+    public FeaturePlan(int sampleRate, int nMFCC, int nFFT, int nMels, int hopLength) {
+        this.sampleRate = sampleRate;
+        this.nMFCC = nMFCC;
+        this.nFFT = nFFT;
+        this.nMels = nMels;
+        this.hopLength = hopLength;
+
+        this.melFilterbank = new MelFilterbank(sampleRate, nFFT, nMels);
+        this.mfccFilterbank = nFFT == MFCC_FFT_SIZE
+                ? melFilterbank
+                : new MelFilterbank(sampleRate, MFCC_FFT_SIZE, nMels);
+        this.dctBasis = dctFilter(nMFCC, nMels);
+
+        Log.d(LOG_TAG, "Created plan - sampleRate: " + sampleRate + " | nMFCC: " + nMFCC + " | nFFT: " + nFFT
+                + " | nMels: " + nMels + " | hopLength: " + hopLength);
+    }
+
+    public boolean matches(int sampleRate, int nMFCC, int nFFT, int nMels, int hopLength) {
+        return this.sampleRate == sampleRate && this.nMFCC == nMFCC && this.nFFT == nFFT
+                && this.nMels == nMels && this.hopLength == hopLength;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getNMFCC() {
+        return nMFCC;
+    }
+
+    public int getNFFT() {
+        return nFFT;
+    }
+
+    public int getNMels() {
+        return nMels;
+    }
+
+    public int getHopLength() {
+        return hopLength;
+    }
+
+    public MelFilterbank getMelFilterbank() {
+        return melFilterbank;
+    }
+
+    public MelFilterbank getMfccFilterbank() {
+        return mfccFilterbank;
+    }
+
+    public float[][] getDctBasis() {
+        return dctBasis;
+    }
+
+    /* Mel filterbank over the 1+nFFT/2 bins of a power spectrum, stored as one run of
+       weights per band, starting at bin [start[band]]. */
+    public static class MelFilterbank {
+
+        private final int nFFT;
+        private final int[] start;
+        private final float[][] weights;
+
+        MelFilterbank(int sampleRate, int nFFT, int nMels) {
+            this.nFFT = nFFT;
+            this.start = new int[nMels];
+            this.weights = new float[nMels][];
+
+            int bins = 1 + nFFT / 2;
+            double[] fftFreqs = new double[bins];
+            for (int j = 0; j < bins; j++) {
+                fftFreqs[j] = sampleRate / 2.0 / (nFFT / 2) * j;
+            }
+
+            double melMax = hzToMel(sampleRate / 2.0);
+            double[] melF = new double[nMels + 2];
+            for (int i = 0; i < melF.length; i++) {
+                melF[i] = melToHz(melMax / (melF.length - 1) * i);
+            }
+
+            double[] band = new double[bins];
+            for (int i = 0; i < nMels; i++) {
+                double lowerDiff = melF[i + 1] - melF[i];
+                double upperDiff = melF[i + 2] - melF[i + 1];
+                double enorm = 2.0 / (melF[i + 2] - melF[i]);
+
+                int first = -1;
+                int last = -1;
+                for (int j = 0; j < bins; j++) {
+                    double lower = (fftFreqs[j] - melF[i]) / lowerDiff;
+                    double upper = (melF[i + 2] - fftFreqs[j]) / upperDiff;
+                    double weight = triangle(lower, upper) * enorm;
+                    band[j] = weight;
+                    if (weight != 0.0) {
+                        if (first < 0) first = j;
+                        last = j;
+                    }
+                }
+
+                //a band can be empty when nMels is large for the FFT size
+                if (first < 0) {
+                    start[i] = 0;
+                    weights[i] = new float[0];
+                    continue;
+                }
+                start[i] = first;
+                weights[i] = new float[last - first + 1];
+                for (int j = first; j <= last; j++) {
+                    weights[i][j - first] = (float) band[j];
+                }
+            }
+        }
+
+        public int getNFFT() {
+            return nFFT;
+        }
+
+        public int getBandCount() {
+            return weights.length;
+        }
+
+        /* Applies every band to one frame of power spectrum. */
+        public void apply(float[] power, float[] out) {
+            for (int i = 0; i < weights.length; i++) {
+                float[] band = weights[i];
+                int offset = start[i];
+                float sum = 0.0f;
+                for (int j = 0; j < band.length; j++) {
+                    sum += band[j] * power[offset + j];
+                }
+                out[i] = sum;
+            }
+        }
+
+        //Same branches as JLibrosa, so a bin sitting exactly on a peak gets 0.
+        private static double triangle(double lower, double upper) {
+            if (lower > upper) return upper > 0.0 ? upper : 0.0;
+            if (lower < upper) return lower > 0.0 ? lower : 0.0;
+            return 0.0;
+        }
+    }
+
+    private static double hzToMel(double hz) {
+        return hz < MIN_LOG_HZ ? hz / F_SP : MIN_LOG_MEL + Math.log(hz / MIN_LOG_HZ) / LOG_STEP;
+    }
+
+    private static double melToHz(double mel) {
+        return mel < MIN_LOG_MEL ? F_SP * mel : MIN_LOG_HZ * Math.exp(LOG_STEP * (mel - MIN_LOG_MEL));
+    }
+
+    private static float[][] dctFilter(int nFilters, int nInput) {
+        float[][] basis = new float[nFilters][nInput];
+        for (int j = 0; j < nInput; j++) {
+            basis[0][j] = (float) (1.0 / Math.sqrt(nInput));
+        }
+        for (int i = 1; i < nFilters; i++) {
+            for (int j = 0; j < nInput; j++) {
+                basis[i][j] = (float) (Math.cos(i * (1 + 2 * j) * Math.PI / (2.0 * nInput)) * Math.sqrt(2.0 / nInput));
+            }
+        }
+        return basis;
+    }
+}
@@ -0,0 +1,63 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/* Recycles fixed-size frames so that a steady-state capture loop allocates nothing.
+
+   The producer acquires a frame, fills it and hands it downstream. Once the
+   consumer is done with it (i.e. after inference), the frame is released back
+   into the pool. If every frame is in flight, a new one is created and the pool
+   grows up to [capacity]; anything released beyond that is left to the GC.
+*/
+
+public class FramePool<T> {
+
+    private static final String LOG_TAG = "Frame_Pool";
+
+    private final ArrayDeque<T> frames;
+    private final Supplier<T> factory;
+    private final int capacity;
+    private int allocations = 0;
+
+    public FramePool(int capacity, Supplier<T> factory) {
+        this.capacity = capacity;
+        this.factory = factory;
+        this.frames = new ArrayDeque<>(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            frames.addLast(allocate());
+        }
+    }
+
+    public static FramePool<short[]> ofShorts(int frameSize, int capacity) {
+        return new FramePool<>(capacity, () -> new short[frameSize]);
+    }
+
+    public synchronized T acquire() {
+        T frame = frames.pollFirst();
+        if (frame == null) {
+            Log.v(LOG_TAG, "Pool exhausted. Allocating new frame.");
+            frame = allocate();
+        }
+        return frame;
+    }
+
+    public synchronized void release(T frame) {
+        if (frame == null || frames.size() >= capacity) {
+            return;
+        }
+        frames.addFirst(frame);
+    }
+
+    public synchronized int getAllocations() {
+        return allocations;
+    }
+
+    private T allocate() {
+        allocations += 1;
+        return factory.get();
+    }
+}
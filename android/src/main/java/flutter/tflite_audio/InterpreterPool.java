@@ -0,0 +1,175 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.MappedByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/* Interpreters for one loaded model, handed out one user at a time.
+
+   Interpreter is not thread safe, so every recognition path (the mic stream, a file,
+   each batch or parallel worker) checks out its own ModelRunner with acquire() and
+   gives it back with release(). Until then, nobody else can get hold of it.
+   All instances share the same memory-mapped model, so an extra instance only costs
+   its tensor arena. They are created on demand, up to [capacity]. Once that many are
+   checked out, acquire() waits for one to be returned.
+
+   close() closes idle instances straight away, and checked out ones when they are
+   returned, so a model can be replaced while a stream is still finishing.
+
+   With cancellable options, cancel() interrupts the invocations of every checked out
+   instance, and of every batched runner until it is closed. Pooled instances are usable
+   again once returned.
+*/
+
+public class InterpreterPool {
+
+    private static final String LOG_TAG = "Interpreter_Pool";
+
+    private final MappedByteBuffer modelBuffer;
+    private final CpuOptions cpuOptions;
+    private final int capacity;
+
+    private final ArrayDeque<ModelRunner> idle = new ArrayDeque<>();
+    private final Set<ModelRunner> checkedOut = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<ModelRunner> batchRunners = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int created = 0;
+    private boolean isClosed = false;
+
+    public InterpreterPool(MappedByteBuffer modelBuffer, CpuOptions cpuOptions, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Pool needs at least 1 interpreter. Received: " + capacity);
+        }
+        this.modelBuffer = modelBuffer;
+        this.cpuOptions = cpuOptions;
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getCreatedCount() {
+        return created;
+    }
+
+    //Blocks until a runner is free. The caller owns it until release().
+    public ModelRunner acquire() {
+        ModelRunner runner;
+        boolean shouldCreate = false;
+
+        synchronized (this) {
+            while (!isClosed && idle.isEmpty() && created >= capacity) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for an interpreter", e);
+                }
+            }
+            if (isClosed) {
+                throw new IllegalStateException("Interpreter pool is closed");
+            }
+
+            runner = idle.pollFirst();
+            if (runner == null) {
+                created += 1;
+                shouldCreate = true;
+            }
+        }
+
+        //outside the lock, so other threads can check out idle runners meanwhile
+        if (shouldCreate) {
+            try {
+                runner = new ModelRunner(createInterpreter());
+                Log.d(LOG_TAG, "Interpreter created: " + getCreatedCount() + "/" + capacity);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    created -= 1;
+                    notifyAll();
+                }
+                throw e;
+            }
+        }
+
+        synchronized (this) {
+            checkedOut.add(runner);
+        }
+        return runner;
+    }
+
+    public synchronized void release(ModelRunner runner) {
+        if (runner == null) return;
+        if (!checkedOut.remove(runner)) {
+            throw new IllegalStateException("Runner was not checked out from this pool");
+        }
+
+        if (isClosed) {
+            runner.getInterpreter().close();
+            return;
+        }
+        runner.clearCancelled();
+        idle.addFirst(runner); //most recently used first, its arena is more likely to be in cache
+        notifyAll();
+    }
+
+    public synchronized void cancel() {
+        if (!cpuOptions.isCancellable()) return;
+        for (ModelRunner runner : checkedOut) {
+            runner.cancel();
+        }
+        for (ModelRunner runner : batchRunners) {
+            runner.cancel();
+        }
+        Log.d(LOG_TAG, "Cancelled " + (checkedOut.size() + batchRunners.size()) + " interpreters");
+    }
+
+    public synchronized void close() {
+        if (isClosed) return;
+        isClosed = true;
+        for (ModelRunner runner : idle) {
+            runner.getInterpreter().close();
+        }
+        idle.clear();
+        notifyAll();
+        Log.d(LOG_TAG, "Pool closed. Checked out: " + checkedOut.size());
+    }
+
+    /* A runner that recognises [batchSize] windows per invocation, on an interpreter of its
+       own. It is not pooled, but cancel() reaches it until closeBatchRunner(). Throws when
+       the model's input or output has no batch dimension. */
+    public ModelRunner createBatchRunner(int batchSize) {
+        Interpreter interpreter = createInterpreter();
+        try {
+            ModelRunner runner = new ModelRunner(interpreter, batchSize);
+            int [] outputShape = runner.getOutputShape();
+            if (outputShape.length == 0 || outputShape[0] != batchSize) {
+                throw new IllegalArgumentException("Model output has no batch dimension: " + Arrays.toString(outputShape));
+            }
+            synchronized (this) {
+                batchRunners.add(runner);
+            }
+            return runner;
+        } catch (RuntimeException e) {
+            interpreter.close();
+            throw e;
+        }
+    }
+
+    public synchronized void closeBatchRunner(ModelRunner runner) {
+        if (!batchRunners.remove(runner)) {
+            throw new IllegalStateException("Runner was not created by this pool");
+        }
+        runner.getInterpreter().close();
+    }
+
+    private Interpreter createInterpreter() {
+        return new Interpreter(modelBuffer, cpuOptions.toInterpreterOptions());
+    }
+}
@@ -1,31 +1,55 @@
 package flutter.tflite_audio;
 
 import android.util.Log;
-import android.util.Pair;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Deque;
 import java.util.List;
 
-/** Reads in results from an instantaneous audio recognition model and smoothes them over time. */
+/** Reads in results from an instantaneous audio recognition model and smoothes them over time.
+ *
+ *  One instance should live for a whole recognition session, so that averaging and suppression
+ *  see past results. Timestamps are expected on the audio (sample) clock.
+ *
+ *  Two modes are supported:
+ *  - "movingAverage" keeps a ring buffer of previous scores with a running sum, so each result
+ *    costs O(labels) regardless of how many results fall inside the averaging window.
+ *  - "exponential" keeps an exponential moving average with O(labels) memory, where
+ *    [averageWindowDurationMs] is the time constant.
+ *
+ *  No memory is allocated per result. Note that the returned [RecognitionResult] is reused by the
+ *  next call.
+ */
 public class LabelSmoothing {
+    private static final String LOG_TAG = "Label_Smoothing";
+
+    public static final String MOVING_AVERAGE = "movingAverage";
+    public static final String EXPONENTIAL = "exponential";
+
     // Configuration settings.
     private List<String> labels = new ArrayList<String>();
     private long averageWindowDurationMs;
     private float detectionThreshold;
     private int suppressionMs;
     private long minimumTimeBetweenSamplesMs;
+    private boolean isExponential;
 
     // Working variables.
-    private Deque<Pair<Long, float[]>> previousResults = new ArrayDeque<Pair<Long, float[]>>();
+    private float[][] previousScores;
+    private long[] previousTimes;
+    private int oldestIndex = 0;
+    private int howManyResults = 0;
+    private final double[] scoreSums;
+    private final float[] averageScores;
+    private long latestTime = Long.MIN_VALUE;
+
     private String previousTopLabel;
     private int labelsCount;
     private long previousTopLabelTime;
     private float previousTopLabelScore;
+    private final RecognitionResult result = new RecognitionResult(SILENCE_LABEL, 0.0f, false);
 
     private static final String SILENCE_LABEL = "_silence_";
     private static final long MINIMUM_TIME_FRACTION = 4;
+    private static final int DEFAULT_CAPACITY = 8;
 
     public LabelSmoothing(
             List<String> inLabels,
@@ -33,6 +57,20 @@ public class LabelSmoothing {
             float inDetectionThreshold,
             int inSuppressionMS,
             long inMinimumTimeBetweenSamplesMS) {
+        this(inLabels, inAverageWindowDurationMs, inDetectionThreshold, inSuppressionMS,
+                inMinimumTimeBetweenSamplesMS, MOVING_AVERAGE, DEFAULT_CAPACITY);
+    }
+
+    /** [inCapacity] is the expected number of results inside the averaging window. The ring
+     *  buffer grows if it is exceeded. */
+    public LabelSmoothing(
+            List<String> inLabels,
+            long inAverageWindowDurationMs,
+            float inDetectionThreshold,
+            int inSuppressionMS,
+            long inMinimumTimeBetweenSamplesMS,
+            String inSmoothingMode,
+            int inCapacity) {
         labels = inLabels;
         averageWindowDurationMs = inAverageWindowDurationMs;
         detectionThreshold = inDetectionThreshold;
@@ -42,39 +80,40 @@ public class LabelSmoothing {
         previousTopLabelTime = Long.MIN_VALUE;
         previousTopLabelScore = 0.0f;
         minimumTimeBetweenSamplesMs = inMinimumTimeBetweenSamplesMS;
+
+        switch (inSmoothingMode) {
+            case MOVING_AVERAGE:
+                isExponential = false;
+                break;
+            case EXPONENTIAL:
+                isExponential = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown smoothing mode: " + inSmoothingMode);
+        }
+
+        int capacity = isExponential ? 0 : Math.max(1, inCapacity);
+        previousScores = new float[capacity][labelsCount];
+        previousTimes = new long[capacity];
+        scoreSums = new double[labelsCount];
+        averageScores = new float[labelsCount];
     }
 
     /** Holds information about what's been recognized. */
     public static class RecognitionResult {
-        public final String foundCommand;
-        public final float score;
-        public final boolean isNewCommand;
+        public String foundCommand;
+        public float score;
+        public boolean isNewCommand;
 
         public RecognitionResult(String inFoundCommand, float inScore, boolean inIsNewCommand) {
-            foundCommand = inFoundCommand;
-            score = inScore;
-            isNewCommand = inIsNewCommand;
+            set(inFoundCommand, inScore, inIsNewCommand);
         }
-    }
 
-    private static class ScoreForSorting implements Comparable<ScoreForSorting> {
-        public final float score;
-        public final int index;
-
-        public ScoreForSorting(float inScore, int inIndex) {
+        private RecognitionResult set(String inFoundCommand, float inScore, boolean inIsNewCommand) {
+            foundCommand = inFoundCommand;
             score = inScore;
-            index = inIndex;
-        }
-
-        @Override
-        public int compareTo(ScoreForSorting other) {
-            if (this.score > other.score) {
-                return -1;
-            } else if (this.score < other.score) {
-                return 1;
-            } else {
-                return 0;
-            }
+            isNewCommand = inIsNewCommand;
+            return this;
         }
     }
 
@@ -87,56 +126,40 @@ public class LabelSmoothing {
                             + currentResults.length);
         }
 
-        if ((!previousResults.isEmpty()) && (currentTimeMS < previousResults.getFirst().first)) {
+        if ((latestTime != Long.MIN_VALUE) && (currentTimeMS < latestTime)) {
             throw new RuntimeException(
                     "You must feed results in increasing time order, but received a timestamp of "
                             + currentTimeMS
                             + " that was earlier than the previous one of "
-                            + previousResults.getFirst().first);
+                            + latestTime);
         }
 
-        int howManyResults = previousResults.size();
         // Ignore any results that are coming in too frequently.
         if (howManyResults > 1) {
-            final long timeSinceMostRecent = currentTimeMS - previousResults.getLast().first;
+            final long timeSinceMostRecent = currentTimeMS - latestTime;
             if (timeSinceMostRecent < minimumTimeBetweenSamplesMs) {
-                return new RecognitionResult(previousTopLabel, previousTopLabelScore, false);
+                return result.set(previousTopLabel, previousTopLabelScore, false);
             }
         }
 
-        // Add the latest results to the head of the queue.
-        previousResults.addLast(new Pair<Long, float[]>(currentTimeMS, currentResults));
-
-        // Prune any earlier results that are too old for the averaging window.
-        final long timeLimit = currentTimeMS - averageWindowDurationMs;
-        while (previousResults.getFirst().first < timeLimit) {
-            previousResults.removeFirst();
+        if (isExponential) {
+            updateExponentialAverage(currentResults, currentTimeMS);
+        } else {
+            updateMovingAverage(currentResults, currentTimeMS);
         }
+        latestTime = currentTimeMS;
 
-        howManyResults = previousResults.size();
-
-        // Calculate the average score across all the results in the window.
-        float[] averageScores = new float[labelsCount];
-        for (Pair<Long, float[]> previousResult : previousResults) {
-            final float[] scoresTensor = previousResult.second;
-            int i = 0;
-            while (i < scoresTensor.length) {
-                averageScores[i] += scoresTensor[i] / howManyResults;
-                ++i;
+        // Find the top averaged score. Ties go to the lowest index.
+        int currentTopIndex = 0;
+        for (int i = 1; i < labelsCount; ++i) {
+            if (averageScores[i] > averageScores[currentTopIndex]) {
+                currentTopIndex = i;
             }
         }
 
-        // Sort the averaged results in descending score order.
-        ScoreForSorting[] sortedAverageScores = new ScoreForSorting[labelsCount];
-        for (int i = 0; i < labelsCount; ++i) {
-            sortedAverageScores[i] = new ScoreForSorting(averageScores[i], i);
-        }
-        Arrays.sort(sortedAverageScores);
-
         // See if the latest top score is enough to trigger a detection.
-        final int currentTopIndex = sortedAverageScores[0].index;
         final String currentTopLabel = labels.get(currentTopIndex);
-        final float currentTopScore = sortedAverageScores[0].score;
+        final float currentTopScore = averageScores[currentTopIndex];
         // If we've recently had another label trigger, assume one that occurs too
         // soon afterwards is a bad result.
         long timeSinceLastTop;
@@ -154,6 +177,76 @@ public class LabelSmoothing {
         } else {
             isNewCommand = false;
         }
-        return new RecognitionResult(currentTopLabel, currentTopScore, isNewCommand);
+        return result.set(currentTopLabel, currentTopScore, isNewCommand);
+    }
+
+    private void updateMovingAverage(float[] currentResults, long currentTimeMS) {
+        // Add the latest results to the head of the ring buffer.
+        if (howManyResults == previousTimes.length) {
+            grow();
+        }
+        final int newestIndex = (oldestIndex + howManyResults) % previousTimes.length;
+        final float[] newestScores = previousScores[newestIndex];
+        System.arraycopy(currentResults, 0, newestScores, 0, labelsCount);
+        previousTimes[newestIndex] = currentTimeMS;
+        howManyResults += 1;
+        for (int i = 0; i < labelsCount; ++i) {
+            scoreSums[i] += newestScores[i];
+        }
+
+        // Prune any earlier results that are too old for the averaging window.
+        final long timeLimit = currentTimeMS - averageWindowDurationMs;
+        while (previousTimes[oldestIndex] < timeLimit) {
+            final float[] oldestScores = previousScores[oldestIndex];
+            for (int i = 0; i < labelsCount; ++i) {
+                scoreSums[i] -= oldestScores[i];
+            }
+            oldestIndex = (oldestIndex + 1) % previousTimes.length;
+            howManyResults -= 1;
+        }
+
+        // Drop any rounding error that built up in the running sum.
+        if (howManyResults == 1) {
+            for (int i = 0; i < labelsCount; ++i) {
+                scoreSums[i] = newestScores[i];
+            }
+        }
+
+        for (int i = 0; i < labelsCount; ++i) {
+            averageScores[i] = (float) (scoreSums[i] / howManyResults);
+        }
+    }
+
+    private void updateExponentialAverage(float[] currentResults, long currentTimeMS) {
+        float alpha;
+        if (howManyResults == 0 || averageWindowDurationMs <= 0) {
+            alpha = 1.0f;
+        } else {
+            alpha = (float) (1.0 - Math.exp(-(double) (currentTimeMS - latestTime) / averageWindowDurationMs));
+        }
+
+        for (int i = 0; i < labelsCount; ++i) {
+            averageScores[i] += alpha * (currentResults[i] - averageScores[i]);
+        }
+        howManyResults = Math.min(howManyResults + 1, 2);
+    }
+
+    // Only happens if more results than expected fall inside the averaging window.
+    private void grow() {
+        final int capacity = previousTimes.length;
+        Log.d(LOG_TAG, "Growing result buffer to " + (capacity * 2));
+
+        float[][] scores = new float[capacity * 2][];
+        long[] times = new long[capacity * 2];
+        for (int i = 0; i < capacity; ++i) {
+            scores[i] = previousScores[(oldestIndex + i) % capacity];
+            times[i] = previousTimes[(oldestIndex + i) % capacity];
+        }
+        for (int i = capacity; i < capacity * 2; ++i) {
+            scores[i] = new float[labelsCount];
+        }
+        previousScores = scores;
+        previousTimes = times;
+        oldestIndex = 0;
     }
-}
\ No newline at end of file
+}
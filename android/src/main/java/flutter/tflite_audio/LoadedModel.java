@@ -0,0 +1,74 @@
+package flutter.tflite_audio;
+
+import java.util.List;
+
+/* Everything loadModel() produces for one model: its interpreter pool, input shape, labels
+   and how its input and output are interpreted. Kept in a ModelCache, so a recognition
+   stream can pick any resident model by handle.
+
+   The size is an estimate: the mapped model, plus roughly one model's worth of packed
+   weights and arena per interpreter that has been created.
+*/
+
+public class LoadedModel implements ModelCache.Entry {
+
+    private final InterpreterPool interpreterPool;
+    private final int [] inputShape;
+    private final int inputSize;
+    private final List<String> labels;
+    private final String inputType;
+    private final boolean outputRawScores;
+    private final long modelBytes;
+    private final long [] warmUpNanos; //empty when no warm-up ran
+
+    public LoadedModel(InterpreterPool interpreterPool, int [] inputShape, int inputSize, List<String> labels,
+                       String inputType, boolean outputRawScores, long modelBytes, long [] warmUpNanos) {
+        this.interpreterPool = interpreterPool;
+        this.inputShape = inputShape;
+        this.inputSize = inputSize;
+        this.labels = labels;
+        this.inputType = inputType;
+        this.outputRawScores = outputRawScores;
+        this.modelBytes = modelBytes;
+        this.warmUpNanos = warmUpNanos;
+    }
+
+    public InterpreterPool getInterpreterPool() {
+        return interpreterPool;
+    }
+
+    public int [] getInputShape() {
+        return inputShape;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public String getInputType() {
+        return inputType;
+    }
+
+    public boolean isOutputRawScores() {
+        return outputRawScores;
+    }
+
+    public long [] getWarmUpNanos() {
+        return warmUpNanos;
+    }
+
+    @Override
+    public long getSizeBytes() {
+        return modelBytes * (1 + interpreterPool.getCreatedCount());
+    }
+
+    //Streams that still use the model return their interpreters to the closed pool, which closes them.
+    @Override
+    public void close() {
+        interpreterPool.close();
+    }
+}
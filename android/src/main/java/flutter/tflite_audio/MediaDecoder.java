@@ -1,6 +1,7 @@
 /* Referemces
 1. https://gist.github.com/a-m-s/1991ab18fbcb0fcc2cf9
 2. https://github.com/tuntorius/mightier_amp/blob/7256c1cb120cc0c4fa1da7fd08ef6464964cadb4/android/app/src/main/java/com/tuntori/mightieramp/MediaDecoder.java
+3. https://developer.android.com/reference/android/media/MediaCodec#asynchronous-processing-using-buffers
   */
 
 package flutter.tflite_audio;
@@ -10,32 +11,57 @@ import android.media.MediaCodec.BufferInfo;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
 import android.content.res.AssetFileDescriptor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/* Decodes the first audio track of a file to 16 bit PCM.
+
+   The codec runs in asynchronous mode: input buffers are filled from the extractor as soon
+   as the codec hands them out, and decoded buffers are queued by index. readByteData()
+   blocks on that queue (no polling) and hands the codec's own output buffer to the caller,
+   so PCM is only copied once, by whoever consumes it.
+
+   The codec, extractor and callback thread are released by release(), on end of stream
+   and on errors. release() can be called more than once.
+*/
 
 public class MediaDecoder {
     private static final String LOG_TAG = "Media_Decoder";
 
-    private MediaExtractor extractor = new MediaExtractor();
+    private final MediaExtractor extractor = new MediaExtractor();
+    private final HandlerThread callbackThread = new HandlerThread("MediaDecoder");
+    private final BlockingQueue<Output> outputs = new LinkedBlockingQueue<>();
     private MediaCodec decoder;
-    
-    private MediaFormat inputFormat;
-    
-    private ByteBuffer[] inputBuffers;
-    private boolean end_of_input_file;
 
-    private ByteBuffer[] outputBuffers;
-    private int outputBufferIndex = -1;
+    private MediaFormat inputFormat;
+    private volatile MediaFormat outputFormat;
+    private volatile Exception error;
+    private boolean isEndOfStream = false;
+    private boolean isReleased = false;
+
+    //A decoded buffer waiting to be read. [END] marks end of stream and errors.
+    private static final class Output {
+        final int index;
+        final BufferInfo info;
+
+        Output(int index, BufferInfo info) {
+            this.index = index;
+            this.info = info;
+        }
+    }
+    private static final Output END = new Output(-1, null);
 
     public MediaDecoder(AssetFileDescriptor fileDescriptor, long startOffset, long declaredLength) {
 
         try {
             extractor.setDataSource(fileDescriptor.getFileDescriptor(), startOffset, declaredLength);
-        } catch(Exception e) {
-            throw new RuntimeException("Failed to load audio file: ", e);
-        }
-            
+
             // Select the first audio track we find.
             int numTracks = extractor.getTrackCount();
             for (int i = 0; i < numTracks; ++i) {
@@ -43,127 +69,146 @@ public class MediaDecoder {
                 String mime = format.getString(MediaFormat.KEY_MIME);
                 if (mime.startsWith("audio/")) {
                     extractor.selectTrack(i);
-                    try {
-                        decoder = MediaCodec.createDecoderByType(mime);
-                    } catch(Exception e) {
-                        throw new RuntimeException("Extractor.selectTrack error: ", e);
-                    }
-                    decoder.configure(format, null, null, 0);
-
-                    /* when adding encoder, use these settings
-                    format.setInteger(MediaFormat.KEY_CHANNEL_COUNT, 1);
-                    format.setInteger(MediaFormat.KEY_SAMPLE_RATE, 8000);
-                    format.setInteger(MediaFormat.KEY_PCM_ENCODING, AudioFormat.ENCODING_PCM_8BIT);
-                    decoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);*/
-
+                    decoder = MediaCodec.createDecoderByType(mime);
                     inputFormat = format;
                     break;
                 }
             }
-            
+
             if (decoder == null) {
                 throw new IllegalArgumentException("No decoder for file format");
             }
-            
+
+            callbackThread.start();
+            decoder.setCallback(new DecoderCallback(), new Handler(callbackThread.getLooper()));
+            decoder.configure(inputFormat, null, null, 0);
             decoder.start();
-            inputBuffers = decoder.getInputBuffers();
-            outputBuffers = decoder.getOutputBuffers();
-            end_of_input_file = false;
-    }
 
-    public void release()
-    {
-        extractor.release();
+        } catch (IllegalArgumentException e) {
+            release();
+            throw e;
+        } catch (Exception e) {
+            release();
+            throw new RuntimeException("Failed to load audio file: ", e);
+        }
     }
-    
-    // Read the raw data from MediaCodec.
-    // The caller should copy the data out of the ByteBuffer before calling this again
-    // or else it may get overwritten.
-    // private ByteBuffer readData(BufferInfo info) {
-    private BufferInfo readData() {
-        if (decoder == null)
-            return null;
-
-        BufferInfo info = new BufferInfo();
-        
-        for (;;) {
-            // Read data from the file into the codec.
-            if (!end_of_input_file) {
-                int inputBufferIndex = decoder.dequeueInputBuffer(10000);
-                if (inputBufferIndex >= 0) {
-                    int size = extractor.readSampleData(inputBuffers[inputBufferIndex], 0); 
-                    if (size < 0) {
-                        // End Of File
-                        decoder.queueInputBuffer(inputBufferIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                        end_of_input_file = true;
-                    } else {
-                        decoder.queueInputBuffer(inputBufferIndex, 0, size, extractor.getSampleTime(), 0);
-                        extractor.advance();
-                    }
+
+    private class DecoderCallback extends MediaCodec.Callback {
+
+        @Override
+        public void onInputBufferAvailable(MediaCodec codec, int index) {
+            if (isEndOfStream) return;
+            try {
+                ByteBuffer inputBuffer = codec.getInputBuffer(index);
+                int size = extractor.readSampleData(inputBuffer, 0);
+                if (size < 0) {
+                    // End Of File
+                    codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                    isEndOfStream = true;
+                } else {
+                    codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                    extractor.advance();
                 }
+            } catch (IllegalStateException e) {
+                //codec was released while this callback was pending
+                Log.d(LOG_TAG, "Input buffer dropped: " + e);
             }
+        }
 
-            // Read the output from the codec.
-            if (outputBufferIndex >= 0)
-                // Ensure that the data is placed at the start of the buffer
-                outputBuffers[outputBufferIndex].position(0);
-                
-            outputBufferIndex = decoder.dequeueOutputBuffer(info, 10000);
-            if (outputBufferIndex >= 0) {
-                // Handle EOF
-                if (info.flags != 0) {
-                    decoder.stop();
-                    decoder.release();
-                    decoder = null;
-                    return null;
-                }
-                
-                return info;
-         
-            } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
-                // This usually happens once at the start of the file.
-                outputBuffers = decoder.getOutputBuffers();
-               }
+        @Override
+        public void onOutputBufferAvailable(MediaCodec codec, int index, BufferInfo info) {
+            outputs.offer(new Output(index, info));
+        }
+
+        @Override
+        public void onError(MediaCodec codec, MediaCodec.CodecException e) {
+            Log.e(LOG_TAG, "Decoder error: " + e);
+            error = e;
+            outputs.offer(END);
+        }
+
+        @Override
+        public void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
+            Log.d(LOG_TAG, "Output format: " + format);
+            outputFormat = format;
         }
     }
-    
+
+    public synchronized void release()
+    {
+        if (isReleased) return;
+        isReleased = true;
+
+        if (decoder != null) {
+            try {
+                decoder.stop();
+            } catch (IllegalStateException e) {
+                Log.d(LOG_TAG, "Decoder already stopped: " + e);
+            }
+            decoder.release();
+            decoder = null;
+        }
+        extractor.release();
+        callbackThread.quitSafely();
+        outputs.clear();
+    }
+
     // Return the Audio sample rate, in samples/sec.
     public int getSampleRate() {
-        return inputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        MediaFormat format = outputFormat != null ? outputFormat : inputFormat;
+        return format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
     }
-    
-    // Read the raw audio data in 16-bit format
-    // Returns null on EOF
-    public byte[] readByteData() {
-        BufferInfo info = readData();
-
-        if (info==null)
-            return null;
-
-        ByteBuffer data = currentBuffer();
-        
-        if (data == null)
-            return null;
-        
-        byte[] returnData = new byte[info.size];
-        
-        if (info.size>0)
-            data.get(returnData);
-
-        releaseBuffer();
-        return returnData;
+
+    public int getChannelCount() {
+        MediaFormat format = outputFormat != null ? outputFormat : inputFormat;
+        return format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
     }
 
+    // Hands the next chunk of 16-bit audio to [consumer] without copying it out of the codec.
+    // The buffer is only valid until [consumer] returns.
+    // Returns false on EOF, after which the decoder is released.
+    public boolean readByteData(Consumer<ByteBuffer> consumer) {
+        if (isReleased) return false;
 
-    private ByteBuffer currentBuffer()
-        {
-            return outputBuffers[outputBufferIndex];
-        }
+        for (;;) {
+            Output output;
+            try {
+                output = outputs.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                release();
+                return false;
+            }
+
+            if (output == END) {
+                release();
+                if (error != null) throw new RuntimeException("Failed to decode audio file: ", error);
+                return false;
+            }
 
-    private void releaseBuffer()
-        {
-            // Release the buffer so MediaCodec can use it again.
-            // The data should stay there until the next time we are called.
-            decoder.releaseOutputBuffer(outputBufferIndex, false);
+            BufferInfo info = output.info;
+            boolean isLast = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            boolean isConfig = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+
+            try {
+                if (info.size > 0 && !isConfig) {
+                    ByteBuffer data = decoder.getOutputBuffer(output.index);
+                    data.limit(info.offset + info.size);
+                    data.position(info.offset);
+                    consumer.accept(data);
+                }
+                decoder.releaseOutputBuffer(output.index, false);
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            }
+
+            if (isLast) {
+                release();
+                //the final buffer can still carry audio
+                return info.size > 0 && !isConfig;
+            }
+            if (info.size > 0 && !isConfig) return true;
         }
     }
+}
@@ -0,0 +1,127 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Keeps several loaded models resident, so switching models (e.g. a wake word model and
+   a command model) does not pay the full load cost every time.
+
+   Entries are keyed by everything that was used to load them (path and options), and
+   every entry gets a handle that recognition calls can refer to. Entries are kept in
+   least recently used order. Once their total size is over [budgetBytes], the least
+   recently used entries are closed, except for the most recent one, which is always
+   kept. Sizes are asked for on every trim, as entries can grow after they are loaded.
+*/
+
+public class ModelCache<T extends ModelCache.Entry> {
+
+    private static final String LOG_TAG = "Model_Cache";
+
+    public interface Entry {
+        long getSizeBytes();
+        void close();
+    }
+
+    private static final class Slot<T> {
+        final int handle;
+        final T value;
+
+        Slot(int handle, T value) {
+            this.handle = handle;
+            this.value = value;
+        }
+    }
+
+    //access order, so iteration starts with the least recently used entry
+    private final LinkedHashMap<String, Slot<T>> slots = new LinkedHashMap<>(8, 0.75f, true);
+    private long budgetBytes;
+    private int nextHandle = 1;
+
+    public ModelCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trim();
+    }
+
+    public synchronized long getBudget() {
+        return budgetBytes;
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        long total = 0;
+        for (Slot<T> slot : slots.values()) {
+            total += slot.value.getSizeBytes();
+        }
+        return total;
+    }
+
+    //Returns 0 when [key] is not cached.
+    public synchronized int getHandle(String key) {
+        Slot<T> slot = slots.get(key);
+        return slot == null ? 0 : slot.handle;
+    }
+
+    //Returns null when [handle] was closed or evicted. Counts as a use.
+    public synchronized T get(int handle) {
+        for (Map.Entry<String, Slot<T>> entry : slots.entrySet()) {
+            if (entry.getValue().handle == handle) {
+                return slots.get(entry.getKey()).value;
+            }
+        }
+        return null;
+    }
+
+    //Replaces (and closes) any entry under the same key. Returns the new handle.
+    public synchronized int put(String key, T value) {
+        Slot<T> previous = slots.remove(key);
+        if (previous != null) previous.value.close();
+
+        int handle = nextHandle++;
+        slots.put(key, new Slot<>(handle, value));
+        trim();
+        return handle;
+    }
+
+    public synchronized boolean close(int handle) {
+        Iterator<Slot<T>> iterator = slots.values().iterator();
+        while (iterator.hasNext()) {
+            Slot<T> slot = iterator.next();
+            if (slot.handle == handle) {
+                iterator.remove();
+                slot.value.close();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void closeAll() {
+        for (Slot<T> slot : slots.values()) {
+            slot.value.close();
+        }
+        slots.clear();
+    }
+
+    private void trim() {
+        long total = getTotalBytes();
+        Iterator<Map.Entry<String, Slot<T>>> iterator = slots.entrySet().iterator();
+
+        while (total > budgetBytes && slots.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Slot<T>> eldest = iterator.next();
+            total -= eldest.getValue().value.getSizeBytes();
+            iterator.remove();
+            eldest.getValue().value.close();
+            Log.d(LOG_TAG, "Evicted model: " + eldest.getKey() + " | remaining: " + total + "/" + budgetBytes + " bytes");
+        }
+    }
+}
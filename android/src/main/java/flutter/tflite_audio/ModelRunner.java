@@ -0,0 +1,228 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/* Binds an interpreter to everything the inference hot path needs.
+
+   Shapes, native-order direct input/output buffers and the output map are created
+   once, when the model is loaded. Callers write into getInputBuffer() and call run(),
+   so a steady-state inference allocates nothing on the Java heap.
+
+   Not thread safe. Confine each runner to one thread at a time. The exception is
+   cancel(), which may be called from any thread when the interpreter is cancellable.
+   A cancelled run returns null instead of scores.
+
+   A batched runner resizes the model's batch dimension to hold several windows, which
+   are written to their own slots with getInputBuffer(slot) and recognised with one run().
+   Scores then hold getScoresPerWindow() values for each slot, in slot order.
+*/
+
+public class ModelRunner {
+
+    private static final String LOG_TAG = "Model_Runner";
+
+    private final Interpreter interpreter;
+    private final int batchSize;
+    private final int[] inputShape;
+    private final int[] outputShape;
+
+    private final ByteBuffer inputBuffer;
+    private final FloatBuffer inputFloats;
+    private final FloatBuffer[] slotInputs;
+    private final ByteBuffer outputBuffer;
+    private final FloatBuffer outputFloats;
+    private final float[] outputScores;
+
+    //decodedWav models take the sample rate as a second input
+    private final ByteBuffer sampleRateBuffer;
+    private final Object[] inputArray;
+    private final Map<Integer, Object> outputMap = new HashMap<>();
+    private volatile boolean isCancelled = false;
+
+    public ModelRunner(Interpreter interpreter) {
+        this(interpreter, 1);
+    }
+
+    //[batchSize] above 1 needs a model with a single input, whose first dimension is 1.
+    public ModelRunner(Interpreter interpreter, int batchSize) {
+        this.interpreter = interpreter;
+        this.batchSize = batchSize;
+
+        if (batchSize > 1) {
+            int[] batchShape = interpreter.getInputTensor(0).shape().clone();
+            if (interpreter.getInputTensorCount() > 1 || batchShape.length < 2 || batchShape[0] != 1) {
+                throw new IllegalArgumentException("Model input has no batch dimension: " + Arrays.toString(batchShape));
+            }
+            batchShape[0] = batchSize;
+            interpreter.resizeInput(0, batchShape);
+            interpreter.allocateTensors();
+        }
+
+        Tensor inputTensor = interpreter.getInputTensor(0);
+        Tensor outputTensor = interpreter.getOutputTensor(0);
+        this.inputShape = inputTensor.shape();
+        this.outputShape = outputTensor.shape();
+
+        this.inputBuffer = ByteBuffer.allocateDirect(inputTensor.numBytes()).order(ByteOrder.nativeOrder());
+        this.inputFloats = inputBuffer.asFloatBuffer();
+        this.outputBuffer = ByteBuffer.allocateDirect(outputTensor.numBytes()).order(ByteOrder.nativeOrder());
+        this.outputFloats = outputBuffer.asFloatBuffer();
+        this.outputScores = new float[outputTensor.numElements()];
+
+        this.slotInputs = new FloatBuffer[batchSize];
+        int slotSize = inputFloats.capacity() / batchSize;
+        for (int slot = 0; slot < batchSize; slot++) {
+            FloatBuffer slotInput = inputFloats.duplicate();
+            slotInput.position(slot * slotSize).limit((slot + 1) * slotSize);
+            slotInputs[slot] = slotInput.slice();
+        }
+
+        this.sampleRateBuffer = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+        this.inputArray = new Object[] { inputBuffer, sampleRateBuffer };
+        this.outputMap.put(0, outputBuffer);
+
+        Log.d(LOG_TAG, "inputShape: " + Arrays.toString(inputShape) + " | outputShape: " + Arrays.toString(outputShape));
+    }
+
+    public Interpreter getInterpreter() {
+        return interpreter;
+    }
+
+    public int[] getInputShape() {
+        return inputShape;
+    }
+
+    public int[] getOutputShape() {
+        return outputShape;
+    }
+
+    public int getInputSize() {
+        return inputFloats.capacity();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getScoresPerWindow() {
+        return outputScores.length / batchSize;
+    }
+
+    // Rewound float view of the input tensor. Fill it completely before calling run().
+    public FloatBuffer getInputBuffer() {
+        inputFloats.clear();
+        return inputFloats;
+    }
+
+    // Rewound float view of one window's slot of a batched input.
+    public FloatBuffer getInputBuffer(int slot) {
+        FloatBuffer slotInput = slotInputs[slot];
+        slotInput.clear();
+        return slotInput;
+    }
+
+    // Returned scores are overwritten by the next run.
+    public float[] run() {
+        inputBuffer.rewind();
+        outputBuffer.rewind();
+        return invoke(inputBuffer);
+    }
+
+    public float[] run(int sampleRate) {
+        inputBuffer.rewind();
+        outputBuffer.rewind();
+        sampleRateBuffer.putInt(0, sampleRate);
+        sampleRateBuffer.rewind();
+        return invoke(inputArray);
+    }
+
+    /* Runs on a window that already holds the model input, such as a direct capture window,
+       so nothing is copied into the input tensor on the Java side. [input] must be a direct,
+       native-order buffer of getInputSize() floats. */
+    public float[] run(ByteBuffer input) {
+        checkInput(input);
+        input.rewind();
+        outputBuffer.rewind();
+        return invoke(input);
+    }
+
+    public float[] run(ByteBuffer input, int sampleRate) {
+        checkInput(input);
+        input.rewind();
+        outputBuffer.rewind();
+        sampleRateBuffer.putInt(0, sampleRate);
+        sampleRateBuffer.rewind();
+        inputArray[0] = input;
+        try {
+            return invoke(inputArray);
+        } finally {
+            inputArray[0] = inputBuffer;
+        }
+    }
+
+    /* Runs [runs] inferences on zero input, so the first real window does not pay for
+       weight packing and arena allocation. Returns each run's time in nanoseconds, the
+       first one being the cold run. Models with a second input get [sampleRate]. */
+    public long[] warmUp(int runs, int sampleRate) {
+        boolean hasSampleRateInput = interpreter.getInputTensorCount() > 1;
+        long[] invokeNanos = new long[runs];
+
+        for (int i = 0; i < runs; i++) {
+            FloatBuffer input = getInputBuffer();
+            while (input.hasRemaining()) input.put(0f);
+
+            long startTime = System.nanoTime();
+            if (hasSampleRateInput) run(sampleRate);
+            else run();
+            invokeNanos[i] = System.nanoTime() - startTime;
+        }
+        Log.d(LOG_TAG, "Warm-up invoke times (ns): " + Arrays.toString(invokeNanos));
+        return invokeNanos;
+    }
+
+    //Stops a running invocation, and every following one until clearCancelled().
+    public void cancel() {
+        isCancelled = true;
+        interpreter.setCancelled(true);
+    }
+
+    public void clearCancelled() {
+        if (!isCancelled) return;
+        isCancelled = false;
+        interpreter.setCancelled(false);
+    }
+
+    private float[] invoke(Object input) {
+        try {
+            if (input instanceof Object[]) interpreter.runForMultipleInputsOutputs((Object[]) input, outputMap);
+            else interpreter.run(input, outputBuffer);
+        } catch (RuntimeException e) {
+            if (isCancelled) return null; //cancellation surfaces as a failed run
+            throw e;
+        }
+        return readScores();
+    }
+
+    private void checkInput(ByteBuffer input) {
+        if (!input.isDirect() || input.order() != ByteOrder.nativeOrder() || input.capacity() != inputBuffer.capacity()) {
+            throw new IllegalArgumentException("Input must be a direct native-order buffer of "
+                + inputBuffer.capacity() + " bytes. Received: " + input.capacity());
+        }
+    }
+
+    private float[] readScores() {
+        outputFloats.rewind();
+        outputFloats.get(outputScores);
+        return outputScores;
+    }
+}
@@ -0,0 +1,179 @@
+package flutter.tflite_audio;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/* Recognises the windows of one stream on several workers, each with its own
+   WindowRecognizer, and hands the results back in window order.
+
+   Windows are dealt out in blocks of consecutive windows, so each worker still sees
+   overlapping neighbours and can reuse their feature frames. Every worker has a small
+   bounded queue. offer() blocks once a worker's queue is full, so the producer (e.g. a
+   decoder) can't run ahead of inference by more than a few blocks.
+
+   Results go through a Resequencer: the handler is called in window order and never
+   from two threads at once, so it can smooth and publish results as usual. Windows that
+   were skipped as silent are handed over in the same order.
+*/
+
+public class ParallelRecognition {
+
+    private static final String LOG_TAG = "Parallel_Recognition";
+
+    //Called in window order, from worker threads.
+    public interface ResultHandler {
+        void onResult(long windowIndex, float [] scores, long inferenceTimeMs);
+        void onSilence(long windowIndex);
+    }
+
+    private static final class Job {
+        final short [] frame;
+        long windowIndex;
+
+        Job(short [] frame) {
+            this.frame = frame;
+        }
+    }
+    private static final Job END = new Job(null);
+
+    private static final class Result {
+        final float [] scores;
+        final long inferenceTimeMs;
+
+        Result(float [] scores, long inferenceTimeMs) {
+            this.scores = scores;
+            this.inferenceTimeMs = inferenceTimeMs;
+        }
+    }
+    private static final Result SILENCE = new Result(null, 0);
+
+    private final int blockSize;
+    private final Supplier<WindowRecognizer> recognizerFactory;
+    private final Consumer<WindowRecognizer> recognizerRecycler;
+    private final BlockingQueue<Job> [] queues;
+    private final FramePool<Job> jobPool;
+    private final Resequencer<Result> resequencer;
+    private final AtomicInteger activeWorkers;
+    private volatile Runnable onFinished;
+
+    @SuppressWarnings("unchecked")
+    public ParallelRecognition(int numOfWorkers, int blockSize, int audioLength,
+                               Supplier<WindowRecognizer> recognizerFactory, Consumer<WindowRecognizer> recognizerRecycler,
+                               ResultHandler handler) {
+        this.blockSize = blockSize;
+        this.recognizerFactory = recognizerFactory;
+        this.recognizerRecycler = recognizerRecycler;
+        this.queues = new BlockingQueue [numOfWorkers];
+        this.activeWorkers = new AtomicInteger(numOfWorkers);
+        this.resequencer = new Resequencer<>((windowIndex, result) -> {
+            if (result == SILENCE) handler.onSilence(windowIndex);
+            else handler.onResult(windowIndex, result.scores, result.inferenceTimeMs);
+        });
+
+        //a queued block and a block under inference per worker
+        int queueSize = 2 * blockSize;
+        this.jobPool = new FramePool<>(numOfWorkers * (queueSize + 1), () -> new Job(new short [audioLength]));
+
+        for (int i = 0; i < numOfWorkers; i++) {
+            BlockingQueue<Job> queue = new ArrayBlockingQueue<>(queueSize);
+            queues[i] = queue;
+            new Thread(() -> work(queue), "ParallelRecognition-" + i).start();
+        }
+        Log.d(LOG_TAG, "Workers: " + numOfWorkers + " | block size: " + blockSize);
+    }
+
+    /* Copies [frame], so it can be released as soon as this returns. [windowIndex] must
+       count up from 0 without gaps. */
+    public void offer(short [] frame, long windowIndex) {
+        Job job = jobPool.acquire();
+        System.arraycopy(frame, 0, job.frame, 0, job.frame.length);
+        job.windowIndex = windowIndex;
+
+        int worker = (int) ((windowIndex / blockSize) % queues.length);
+        try {
+            queues[worker].put(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            resequencer.complete(windowIndex, null);
+        }
+    }
+
+    //For a silent window, which is not recognised. The handler hears of it in window order.
+    public void skipSilent(long windowIndex) {
+        resequencer.complete(windowIndex, SILENCE);
+    }
+
+    //Returns straight away. [onFinished] runs once every offered window has been handed over.
+    public void finish(Runnable onFinished) {
+        this.onFinished = onFinished;
+        for (BlockingQueue<Job> queue : queues) {
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void work(BlockingQueue<Job> queue) {
+        WindowRecognizer recognizer = null;
+        try {
+            recognizer = recognizerFactory.get();
+            for (;;) {
+                Job job = queue.take();
+                if (job == END) break;
+                recognise(recognizer, job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Worker failed: " + e);
+            skipRemaining(queue);
+        } finally {
+            if (recognizer != null) recognizerRecycler.accept(recognizer);
+            if (activeWorkers.decrementAndGet() == 0) {
+                Log.d(LOG_TAG, "All windows recognised");
+                Runnable callback = onFinished;
+                if (callback != null) callback.run();
+            }
+        }
+    }
+
+    private void recognise(WindowRecognizer recognizer, Job job) {
+        long windowIndex = job.windowIndex;
+        Result result = null;
+        try {
+            long startTime = SystemClock.elapsedRealtime();
+            float [] scores = recognizer.recognise(job.frame, windowIndex);
+            long inferenceTimeMs = SystemClock.elapsedRealtime() - startTime;
+            //the runner reuses its score array for the next window
+            if (scores != null) result = new Result(scores.clone(), inferenceTimeMs);
+        } finally {
+            jobPool.release(job);
+            resequencer.complete(windowIndex, result);
+        }
+    }
+
+    //A failed worker still has to account for its windows, or later results would wait forever.
+    private void skipRemaining(BlockingQueue<Job> queue) {
+        for (;;) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (job == END) return;
+            jobPool.release(job);
+            resequencer.complete(job.windowIndex, null);
+        }
+    }
+}
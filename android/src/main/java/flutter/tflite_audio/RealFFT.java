@@ -0,0 +1,149 @@
+package flutter.tflite_audio;
+
+/* Forward FFT for real input, working on primitive float arrays.
+
+   A real signal of n samples is packed into a complex signal of n/2 samples
+   (even samples as the real part, odd samples as the imaginary part), which is
+   transformed with an iterative radix-2 FFT and then split back into the
+   n/2+1 non-redundant bins. Bit reversal and twiddle factors are computed once
+   per instance, so a transform allocates nothing.
+
+   Matches the unnormalised (DftNormalization.STANDARD) forward transform used by JLibrosa.
+   n must be a power of 2. Not thread safe, as scratch buffers are shared between calls.
+*/
+
+public class RealFFT {
+
+    private final int n;
+    private final int half;
+    private final int[] bitReverse;
+
+    //twiddles of the n/2 complex transform
+    private final float[] cos;
+    private final float[] sin;
+
+    //twiddles that split the packed transform back into real bins
+    private final float[] splitCos;
+    private final float[] splitSin;
+
+    private final float[] re;
+    private final float[] im;
+
+    public RealFFT(int n) {
+        if (n < 2 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of 2. Received: " + n);
+        }
+        this.n = n;
+        this.half = n / 2;
+        this.re = new float[half];
+        this.im = new float[half];
+
+        int bits = Integer.numberOfTrailingZeros(half);
+        this.bitReverse = new int[half];
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+
+        this.cos = new float[Math.max(1, half / 2)];
+        this.sin = new float[Math.max(1, half / 2)];
+        for (int i = 0; i < half / 2; i++) {
+            double angle = -2 * Math.PI * i / half;
+            cos[i] = (float) Math.cos(angle);
+            sin[i] = (float) Math.sin(angle);
+        }
+
+        this.splitCos = new float[half];
+        this.splitSin = new float[half];
+        for (int k = 0; k < half; k++) {
+            double angle = -2 * Math.PI * k / n;
+            splitCos[k] = (float) Math.cos(angle);
+            splitSin[k] = (float) Math.sin(angle);
+        }
+    }
+
+    public int getSize() {
+        return n;
+    }
+
+    public int getBinCount() {
+        return half + 1;
+    }
+
+    /* Transforms [input] (n samples) into [outRe] and [outIm] (n/2+1 bins each). */
+    public void forward(float[] input, float[] outRe, float[] outIm) {
+        transformPacked(input);
+        split(outRe, outIm, null);
+    }
+
+    /* |X|^2 of each bin, written into [out] (n/2+1 values). */
+    public void powerSpectrum(float[] input, float[] out) {
+        transformPacked(input);
+        split(null, null, out);
+    }
+
+    /* |X| of each bin, written into [out] (n/2+1 values). */
+    public void magnitudeSpectrum(float[] input, float[] out) {
+        powerSpectrum(input, out);
+        for (int k = 0; k <= half; k++) {
+            out[k] = (float) Math.sqrt(out[k]);
+        }
+    }
+
+    //Either fills [outRe]/[outIm] or [outPower].
+    private void split(float[] outRe, float[] outIm, float[] outPower) {
+        for (int k = 0; k <= half; k++) {
+            int a = k % half;
+            int b = (half - k) % half;
+
+            //even and odd halves of the spectrum, recovered from the packed transform
+            float evenRe = 0.5f * (re[a] + re[b]);
+            float evenIm = 0.5f * (im[a] - im[b]);
+            float oddRe = 0.5f * (im[a] + im[b]);
+            float oddIm = -0.5f * (re[a] - re[b]);
+
+            float wr = k < half ? splitCos[k] : -1.0f;
+            float wi = k < half ? splitSin[k] : 0.0f;
+
+            float binRe = evenRe + wr * oddRe - wi * oddIm;
+            float binIm = evenIm + wr * oddIm + wi * oddRe;
+
+            if (outPower != null) {
+                outPower[k] = binRe * binRe + binIm * binIm;
+            } else {
+                outRe[k] = binRe;
+                outIm[k] = binIm;
+            }
+        }
+    }
+
+    private void transformPacked(float[] input) {
+        if (input.length < n) {
+            throw new IllegalArgumentException("Expected " + n + " samples. Received: " + input.length);
+        }
+
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            re[j] = input[2 * i];
+            im[j] = input[2 * i + 1];
+        }
+
+        for (int size = 2; size <= half; size <<= 1) {
+            int step = half / size;
+            int span = size / 2;
+            for (int start = 0; start < half; start += size) {
+                for (int j = 0; j < span; j++) {
+                    float wr = cos[j * step];
+                    float wi = sin[j * step];
+                    int top = start + j;
+                    int bottom = top + span;
+                    float tr = wr * re[bottom] - wi * im[bottom];
+                    float ti = wr * im[bottom] + wi * re[bottom];
+                    re[bottom] = re[top] - tr;
+                    im[bottom] = im[top] - ti;
+                    re[top] += tr;
+                    im[top] += ti;
+                }
+            }
+        }
+    }
+}
@@ -6,6 +6,9 @@ import android.media.AudioRecord;
 import android.media.AudioFormat;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.util.concurrent.locks.ReentrantLock;
 
 import io.reactivex.rxjava3.core.Observable;
@@ -37,31 +40,64 @@ https://stackoverflow.com/questions/54566753/escaping-closure-in-swift-and-how-t
 public class Recording{
 
     private static final String LOG_TAG = "Recording";
+    private static final int FRAME_POOL_SIZE = 4; //frame being recorded + queued frames + frame under inference
  
     private int bufferSize;
     private int audioLength;
+    private int audioStride;
     private int sampleRate;
     private int numOfInferences;
+    private int inferenceCount = 0;
 
     private AudioRecord record;
     private boolean shouldContinue;
 
     private RecordingData recordingData;
+    private SlidingWindow slidingWindow;
+    private FramePool<short []> framePool;
+    private short [] shortData;
     private PublishSubject<short []> subject;
     private ReentrantLock recordingBufferLock;
 
-    @SuppressLint("MissingPermission")
+    //direct capture for raw audio models
+    private boolean isDirectCapture = false;
+    private FramePool<ByteBuffer> directPool;
+    private PublishSubject<ByteBuffer> directSubject;
+
+    //capture at a different rate than the model, e.g. the device's native rate
+    private Resampler resampler;
+
+    //sees every sample at the model's rate before it is windowed
+    private ActivityGate activityGate;
+    private SampleHistory sampleHistory;
+
     public Recording(int bufferSize, int audioLength, int sampleRate, int numOfInferences){
+        this(bufferSize, audioLength, audioLength, sampleRate, numOfInferences);
+    }
+
+    public Recording(int bufferSize, int audioLength, int audioStride, int sampleRate, int numOfInferences){
+        this(bufferSize, audioLength, audioStride, sampleRate, sampleRate, numOfInferences);
+    }
+
+    /* Records at [captureRate] and resamples to [sampleRate] before windowing. Many devices
+       only capture natively at 44.1 or 48kHz and would otherwise resample internally. */
+    @SuppressLint("MissingPermission")
+    public Recording(int bufferSize, int audioLength, int audioStride, int sampleRate, int captureRate, int numOfInferences){
         this.bufferSize = bufferSize;
         this.audioLength = audioLength;
+        this.audioStride = audioStride;
         this.sampleRate = sampleRate;
         this.numOfInferences = numOfInferences;
 
         this.subject = PublishSubject.create();
-        this.recordingData = new RecordingData(audioLength, bufferSize, numOfInferences);
+        this.shortData = new short [bufferSize];
+        this.framePool = FramePool.ofShorts(audioLength, FRAME_POOL_SIZE);
+        this.recordingData = new RecordingData(audioLength, bufferSize, numOfInferences, framePool);
+        this.slidingWindow = new SlidingWindow(audioLength, audioStride, framePool);
+        if (captureRate != sampleRate) this.resampler = new Resampler(captureRate, sampleRate);
         this.record = new AudioRecord(
             MediaRecorder.AudioSource.DEFAULT,
-            sampleRate,
+            captureRate,
             AudioFormat.CHANNEL_IN_MONO,
             AudioFormat.ENCODING_PCM_16BIT,
             bufferSize);
@@ -72,27 +108,167 @@ public class Recording{
         this.recordingBufferLock = recordingBufferLock;
     }
 
+    /* Raw audio models only. Instead of short [] windows, emits native-order float32
+       ByteBuffers of [audioLength] that can be passed straight to the interpreter.
+       Only applies to back-to-back windows at the capture rate. */
+    public void setDirectCapture(boolean isDirectCapture){
+        this.isDirectCapture = isDirectCapture && audioStride == audioLength && resampler == null;
+        if (this.isDirectCapture && directPool == null) {
+            int windowBytes = audioLength * 4;
+            this.directPool = new FramePool<>(FRAME_POOL_SIZE,
+                () -> ByteBuffer.allocateDirect(windowBytes).order(ByteOrder.nativeOrder()));
+            this.directSubject = PublishSubject.create();
+        }
+    }
+
+    public void setActivityGate(ActivityGate activityGate){
+        this.activityGate = activityGate;
+    }
+
+    //Not written by direct capture.
+    public void setSampleHistory(SampleHistory sampleHistory){
+        this.sampleHistory = sampleHistory;
+    }
+
+    public boolean isDirectCapture(){
+        return isDirectCapture;
+    }
+
+    public Observable<ByteBuffer> getDirectObservable() {
+        return (Observable<ByteBuffer>) this.directSubject;
+    }
+
+    public FramePool<ByteBuffer> getDirectPool() {
+        return this.directPool;
+    }
+
 
     public Observable<short []> getObservable() {
         return (Observable<short []>) this.subject;
      } 
 
+    //Emitted frames should be released back to this pool once inference is done.
+    public FramePool<short []> getFramePool() {
+        return this.framePool;
+    }
+
 
     public void stop(){
         shouldContinue = false;
         record.stop();
         record.release();  
         subject.onComplete();
+        if (directSubject != null) directSubject.onComplete();
     }
 
     public void start(){
         Log.v(LOG_TAG, "Recording started");
         shouldContinue = true;
         record.startRecording();
-        splice();
+        if (isDirectCapture) spliceDirect();
+        else if (audioStride != audioLength || resampler != null) spliceWithStride();
+        else splice();
         
     }
 
+    /* Reads AudioRecord into a direct buffer, then converts int16 to normalised float32
+       straight into the window handed to the interpreter. This single pass is the only copy
+       between capture and inference. Samples beyond the last inference are discarded. */
+    public void spliceDirect(){
+
+        if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+            Log.e(LOG_TAG, "Audio Record can't initialize!");
+            return;
+        }
+
+        final float maxRes16 = (float) Math.pow(2, 15) -1; //outputs 32767.0f
+        ByteBuffer captureBuffer = ByteBuffer.allocateDirect(bufferSize * 2).order(ByteOrder.nativeOrder());
+        ShortBuffer captureShorts = captureBuffer.asShortBuffer();
+
+        ByteBuffer window = directPool.acquire();
+        int windowOffset = 0;
+
+        while (shouldContinue) {
+
+            //AudioRecord always writes from the start of the buffer, in native byte order
+            int readBytes = record.read(captureBuffer, captureBuffer.capacity(), AudioRecord.READ_BLOCKING);
+            if (readBytes < 0) {
+                //errors such as ERROR_DEAD_OBJECT do not clear, so retrying would only spin
+                Log.e(LOG_TAG, "Audio Record read error: " + readBytes + ". Stopping recording.");
+                directPool.release(window);
+                stop();
+                return;
+            }
+            if (readBytes == 0) continue;
+
+            int readCount = readBytes / 2;
+            if (activityGate != null) activityGate.write(captureShorts, readCount);
+            for (int i = 0; i < readCount && shouldContinue; i++) {
+                window.putFloat(windowOffset * 4, captureShorts.get(i) / maxRes16);
+                windowOffset += 1;
+
+                if (windowOffset == audioLength) {
+                    inferenceCount += 1;
+                    directSubject.onNext(window);
+
+                    if (inferenceCount >= numOfInferences) {
+                        stop();
+                        return;
+                    }
+                    window = directPool.acquire();
+                    windowOffset = 0;
+                }
+            }
+        }
+    }
+
+    //Overlapping or resampled windows: emits a window of [audioLength] every [audioStride] samples
+    public void spliceWithStride(){
+
+        if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+            Log.e(LOG_TAG, "Audio Record can't initialize!");
+            return;
+        }
+
+        while (shouldContinue) {
+
+            int readCount = record.read(shortData, 0, shortData.length);
+            if (readCount < 0) {
+                //errors such as ERROR_DEAD_OBJECT do not clear, so retrying would only spin
+                Log.e(LOG_TAG, "Audio Record read error: " + readCount + ". Stopping recording.");
+                stop();
+                return;
+            }
+            if (readCount == 0) continue;
+
+            recordingBufferLock.lock();
+            try {
+                if (resampler == null) writeWindow(shortData, 0, readCount);
+                else resampler.process(shortData, 0, readCount, this::writeWindow);
+            } finally {
+                recordingBufferLock.unlock();
+            }
+
+            if (inferenceCount >= numOfInferences) stop();
+        }
+    }
+
+    private void writeWindow(short [] data, int offset, int length){
+        if (activityGate != null) activityGate.write(data, offset, length);
+        if (sampleHistory != null) sampleHistory.write(data, offset, length);
+        slidingWindow.write(data, offset, length, this::emitWindow);
+    }
+
+    private void emitWindow(short [] frame){
+        if (inferenceCount >= numOfInferences) {
+            framePool.release(frame);
+            return;
+        }
+        inferenceCount += 1;
+        Log.v(LOG_TAG, "Window emitted");
+        subject.onNext(frame);
+    }
+
     public void splice(){
 
         if (record.getState() != AudioRecord.STATE_INITIALIZED) {
@@ -102,8 +278,9 @@ public class Recording{
 
         while (shouldContinue) {
 
-            short[] shortData = new short [bufferSize];
             record.read(shortData, 0, shortData.length);
+            if (activityGate != null) activityGate.write(shortData, 0, shortData.length);
+            if (sampleHistory != null) sampleHistory.write(shortData, 0, shortData.length);
             recordingBufferLock.lock();
 
             try {
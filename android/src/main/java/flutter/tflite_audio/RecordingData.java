@@ -21,18 +21,22 @@ public class RecordingData {
     //Excess count
     private int remainingLength = 0;
     private int excessLength = 0;
-    private short[] remainingFrame;
-    private short[] excessFrame;
 
     //result
+    private final FramePool<short[]> framePool;
     private short[] recordingBuffer;
 
     public RecordingData(int audioLength, int bufferSize, int numOfInferences){
+        this(audioLength, bufferSize, numOfInferences, FramePool.ofShorts(audioLength, 1));
+    }
+
+    public RecordingData(int audioLength, int bufferSize, int numOfInferences, FramePool<short[]> framePool){
         this.audioLength = audioLength;
         this.bufferSize = bufferSize;
         this.numOfInferences = numOfInferences;
+        this.framePool = framePool;
 
-        this.recordingBuffer = new short[audioLength];
+        this.recordingBuffer = framePool.acquire();
         this.readCount = bufferSize; //readcount should always be recordingOffset + bufferSize;
     }
 
@@ -67,11 +71,14 @@ public class RecordingData {
         recordingOffset += shortData.length;
         readCount =  recordingOffset + shortData.length;
 
-        Log.v(LOG_TAG, "recordingOffset: " + recordingOffset + "/" + audioLength + " | inferenceCount: "
-        + inferenceCount + "/" + numOfInferences);
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, "recordingOffset: " + recordingOffset + "/" + audioLength + " | inferenceCount: "
+            + inferenceCount + "/" + numOfInferences);
+        }
         return this;
     }
 
+    //Ownership of [recordingBuffer] passes to the consumer, who should release it back to the pool.
     public RecordingData emit(AudioChunk audioChunk){
         audioChunk.get(recordingBuffer);
         return this;
@@ -84,42 +91,43 @@ public class RecordingData {
 
     public RecordingData updateRemain(){
         remainingLength = audioLength - recordingOffset;
-        remainingFrame = new short[remainingLength];
         return this;
     }
 
 
     public RecordingData trimToRemain(short[] shortData){
-        System.arraycopy(shortData, 0, remainingFrame, 0, remainingLength);
-        System.arraycopy(remainingFrame, 0, recordingBuffer, recordingOffset, remainingLength);
+        System.arraycopy(shortData, 0, recordingBuffer, recordingOffset, remainingLength);
 
         //!Dont need [readCount] as you are trimming the data. (Already readcount in append)
         recordingOffset += remainingLength;
-        Log.v(LOG_TAG, "recordingOffset: " + recordingOffset + "/" + audioLength + " | inferenceCount: "
-        + inferenceCount + "/" + numOfInferences + " (" + remainingLength +  " samples trimmed to remaining buffer)");
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, "recordingOffset: " + recordingOffset + "/" + audioLength + " | inferenceCount: "
+            + inferenceCount + "/" + numOfInferences + " (" + remainingLength +  " samples trimmed to remaining buffer)");
+        }
         return this;
     }
 
     public RecordingData updateExcess(){
         excessLength = bufferSize - remainingLength;
-        excessFrame = new short[excessLength];
         return this;
     }
 
     public RecordingData addExcessToNew(short[] shortData){
-        System.arraycopy(shortData, remainingLength, excessFrame, 0, excessLength);
-        System.arraycopy(excessFrame, 0, recordingBuffer, 0, excessLength);
+        System.arraycopy(shortData, remainingLength, recordingBuffer, 0, excessLength);
         
         //!need [readCount] as your add excess data in appeneded to new data
         recordingOffset += excessLength;
         readCount = recordingOffset + shortData.length;
-        Log.v(LOG_TAG, "recordingOffset: " + recordingOffset + "/" + audioLength + " | inferenceCount: "
-        + inferenceCount + "/" + numOfInferences + " (" + excessLength +  " excess samples added to new buffer)");
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, "recordingOffset: " + recordingOffset + "/" + audioLength + " | inferenceCount: "
+            + inferenceCount + "/" + numOfInferences + " (" + excessLength +  " excess samples added to new buffer)");
+        }
         return this;
     }
 
+    //Every emitted window is fully overwritten before its next emit, so a recycled frame needs no zeroing.
     public RecordingData clear(){
-        recordingBuffer = new short[audioLength];
+        recordingBuffer = framePool.acquire();
         recordingOffset = 0;
         readCount = bufferSize; //readcount should always be recordingOffset + bufferSize;
         return this;
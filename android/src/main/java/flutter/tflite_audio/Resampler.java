@@ -0,0 +1,218 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+/* Streaming sample rate converter for 16 bit audio.
+
+   Polyphase windowed-sinc: the rate ratio is reduced to upFactor/downFactor, and a
+   Kaiser-windowed sinc is sampled once per phase into a [upFactor][taps] table. Each output
+   sample is then a single dot product of one table row with the latest input samples.
+   When downsampling, the cutoff is lowered to the output Nyquist frequency, so nothing
+   aliases into the model's band.
+
+   Tables are built once per rate pair. process() keeps its history between calls and
+   allocates nothing, so it can sit between AudioRecord/MediaDecoder and the windowing
+   stage. Output is aligned with the input (the filter delay is compensated), and
+   flush() emits the tail once the input has ended.
+
+   Not thread safe.
+*/
+
+public class Resampler {
+
+    private static final String LOG_TAG = "Resampler";
+
+    private static final int ZERO_CROSSINGS = 16;
+    private static final double ROLLOFF = 0.95;
+    private static final double KAISER_BETA = 8.0;
+    private static final int CHUNK_SIZE = 1024;
+
+    //Receives resampled audio. [data] is reused once write() returns.
+    public interface Output {
+        void write(short[] data, int offset, int length);
+    }
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int upFactor;
+    private final int downFactor;
+    private final int halfTaps;
+    private final float[][] filters;
+
+    private final float[] history;
+    private final short[] output;
+    private int historyLength;
+    private int nextIndex;
+    private int nextPhase = 0;
+
+    private long inputCount = 0;
+    private long outputCount = 0;
+
+    public Resampler(int inputRate, int outputRate) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Sample rates must be greater than 0. Received: "
+                    + inputRate + " -> " + outputRate);
+        }
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+
+        int divisor = gcd(inputRate, outputRate);
+        this.upFactor = outputRate / divisor;
+        this.downFactor = inputRate / divisor;
+
+        //cutoff relative to the input Nyquist frequency
+        double cutoff = Math.min(1.0, (double) upFactor / downFactor) * ROLLOFF;
+        this.halfTaps = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+        this.filters = createFilters(upFactor, halfTaps, cutoff);
+
+        //zeros before the first sample, so the first output lines up with the first input
+        this.history = new float[2 * halfTaps + CHUNK_SIZE];
+        this.historyLength = halfTaps - 1;
+        this.nextIndex = halfTaps - 1;
+        this.output = new short[(int) ((long) CHUNK_SIZE * upFactor / downFactor) + 2];
+
+        Log.d(LOG_TAG, inputRate + " -> " + outputRate + " Hz | phases: " + upFactor + " | taps: " + (2 * halfTaps));
+    }
+
+    public boolean isPassthrough() {
+        return inputRate == outputRate;
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    public void process(short[] src, int offset, int length, Output out) {
+        if (isPassthrough()) {
+            out.write(src, offset, length);
+            return;
+        }
+
+        inputCount += length;
+        while (length > 0) {
+            int count = Math.min(length, history.length - historyLength);
+            for (int i = 0; i < count; i++) {
+                history[historyLength + i] = src[offset + i];
+            }
+            historyLength += count;
+            offset += count;
+            length -= count;
+            drain(out);
+        }
+    }
+
+    /* Pads the end of the input with silence, so that every input sample is fully represented
+       in the output. The resampler can't be used afterwards. */
+    public void flush(Output out) {
+        if (isPassthrough()) return;
+
+        long expectedOutput = (inputCount * upFactor + downFactor - 1) / downFactor;
+        while (outputCount < expectedOutput) {
+            int count = Math.min(halfTaps, history.length - historyLength);
+            for (int i = 0; i < count; i++) {
+                history[historyLength + i] = 0.0f;
+            }
+            historyLength += count;
+            drain(out, expectedOutput);
+        }
+    }
+
+    private void drain(Output out) {
+        drain(out, Long.MAX_VALUE);
+    }
+
+    private void drain(Output out, long outputLimit) {
+        int produced = 0;
+        while (nextIndex + halfTaps < historyLength && outputCount < outputLimit) {
+            float[] filter = filters[nextPhase];
+            int start = nextIndex - halfTaps + 1;
+            float sum = 0.0f;
+            for (int k = 0; k < filter.length; k++) {
+                sum += filter[k] * history[start + k];
+            }
+            output[produced++] = clip(sum);
+            outputCount += 1;
+
+            nextPhase += downFactor;
+            nextIndex += nextPhase / upFactor;
+            nextPhase %= upFactor;
+
+            if (produced == output.length) {
+                out.write(output, 0, produced);
+                produced = 0;
+            }
+        }
+        if (produced > 0) {
+            out.write(output, 0, produced);
+        }
+
+        //drop input that no future output can reach
+        int discard = Math.min(nextIndex - halfTaps + 1, historyLength);
+        if (discard > 0) {
+            System.arraycopy(history, discard, history, 0, historyLength - discard);
+            historyLength -= discard;
+            nextIndex -= discard;
+        }
+    }
+
+    /* Row p holds the taps for an output that falls p/upFactor of a sample after an input
+       sample, ordered from the oldest input sample to the newest. Rows are normalised
+       to unity gain at DC. */
+    private static float[][] createFilters(int phases, int halfTaps, double cutoff) {
+        int taps = 2 * halfTaps;
+        float[][] filters = new float[phases][taps];
+        double besselBeta = bessel0(KAISER_BETA);
+
+        for (int p = 0; p < phases; p++) {
+            double sum = 0.0;
+            double[] row = new double[taps];
+            for (int k = 0; k < taps; k++) {
+                //distance in input samples between the output and this tap
+                double t = (double) p / phases + (halfTaps - 1 - k);
+                double x = t / halfTaps;
+                double window = Math.abs(x) >= 1.0 ? 0.0 : bessel0(KAISER_BETA * Math.sqrt(1.0 - x * x)) / besselBeta;
+                row[k] = cutoff * sinc(cutoff * t) * window;
+                sum += row[k];
+            }
+            for (int k = 0; k < taps; k++) {
+                filters[p][k] = (float) (row[k] / sum);
+            }
+        }
+        return filters;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0.0) return 1.0;
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    //zeroth order modified Bessel function of the first kind
+    private static double bessel0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        for (int k = 1; k < 32; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+        }
+        return sum;
+    }
+
+    private static short clip(float value) {
+        if (value > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (value < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) Math.round(value);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
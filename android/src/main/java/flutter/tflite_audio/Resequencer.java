@@ -0,0 +1,52 @@
+package flutter.tflite_audio;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* Puts results that complete out of order back into sequence order.
+
+   Items are completed with their sequence number (from 0, no gaps) in any order, from any
+   thread. Each item is handed to [sink] once every item before it has been handed over,
+   so the sink sees the sequence in order and never from two threads at once. A sequence
+   that produced nothing is completed with null, so it does not hold up the rest.
+*/
+
+public class Resequencer<T> {
+
+    public interface Sink<T> {
+        void accept(long sequence, T item);
+    }
+
+    private final Sink<T> sink;
+    private final Map<Long, T> pending = new HashMap<>();
+    private long nextSequence = 0;
+
+    public Resequencer(Sink<T> sink) {
+        this.sink = sink;
+    }
+
+    public synchronized void complete(long sequence, T item) {
+        if (sequence != nextSequence) {
+            pending.put(sequence, item);
+            return;
+        }
+
+        if (item != null) sink.accept(sequence, item);
+        nextSequence += 1;
+
+        while (pending.containsKey(nextSequence)) {
+            T next = pending.remove(nextSequence);
+            if (next != null) sink.accept(nextSequence, next);
+            nextSequence += 1;
+        }
+    }
+
+    //Number of items waiting for an earlier item to complete
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+}
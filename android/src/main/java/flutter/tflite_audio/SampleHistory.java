@@ -0,0 +1,65 @@
+package flutter.tflite_audio;
+
+import java.util.Arrays;
+
+/* The most recent [capacity] samples of a stream, addressed by their position on the
+   stream's sample clock.
+
+   Written by the capture thread and read by the recognition thread, which can be a few
+   windows behind. read() fails instead of returning samples that have already been
+   overwritten or have not arrived yet.
+*/
+
+public class SampleHistory {
+
+    private final short [] ring;
+    private long written = 0; //samples written since the stream started
+
+    public SampleHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0. Received: " + capacity);
+        }
+        this.ring = new short [capacity];
+    }
+
+    public synchronized void write(short [] src, int offset, int length) {
+        //only the tail fits, when more than the capacity is written at once
+        if (length > ring.length) {
+            written += length - ring.length;
+            offset += length - ring.length;
+            length = ring.length;
+        }
+        int start = (int) (written % ring.length);
+        int firstPart = Math.min(length, ring.length - start);
+        System.arraycopy(src, offset, ring, start, firstPart);
+        System.arraycopy(src, offset + firstPart, ring, 0, length - firstPart);
+        written += length;
+    }
+
+    public synchronized long getWrittenCount() {
+        return written;
+    }
+
+    /* Copies the samples from [startSample] into [dst]. Samples before the start of the
+       stream are zeros. Returns false when some of them are no longer, or not yet, held. */
+    public synchronized boolean read(long startSample, short [] dst) {
+        long endSample = startSample + dst.length;
+        if (endSample > written || Math.max(startSample, 0) < written - ring.length) {
+            return false;
+        }
+
+        int dstOffset = 0;
+        if (startSample < 0) {
+            dstOffset = (int) Math.min(-startSample, dst.length);
+            Arrays.fill(dst, 0, dstOffset, (short) 0);
+        }
+        for (long sample = startSample + dstOffset; sample < endSample; ) {
+            int ringIndex = (int) (sample % ring.length);
+            int count = (int) Math.min(endSample - sample, ring.length - ringIndex);
+            System.arraycopy(ring, ringIndex, dst, dstOffset, count);
+            dstOffset += count;
+            sample += count;
+        }
+        return true;
+    }
+}
@@ -2,10 +2,9 @@ package flutter.tflite_audio;
 
 import org.apache.commons.math3.complex.Complex;
 
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 
-import com.jlibrosa.audio.JLibrosa;
-import com.jlibrosa.audio.process.AudioFeatureExtraction;
 
 import android.util.Log;
 
@@ -48,65 +47,251 @@ import android.util.Log;
 public class SignalProcessing{
     
     private static final String LOG_TAG = "Signal_Processing";
-    private JLibrosa jLibrosa = new JLibrosa();
-    private AudioFeatureExtraction featureExtractor = new AudioFeatureExtraction();
     private boolean showPreprocessLogs = true;
 
-    private int sampleRate;
-    private int nMFCC;
-    private int nFFT;
-    private int nMels;
-    private int hopLength;
+    private static final int SPECTROGRAM = 0;
+    private static final int MEL_SPECTROGRAM = 1;
+    private static final int MFCC = 2;
+
+    //windows with no known position on the stream are computed from scratch
+    public static final long UNKNOWN_POSITION = -1;
+
+    private final FeaturePlan plan;
+    private final int hopLength;
+
+    //working buffers, sized on first use and reused for every window
+    private Stft stft;
+    private Stft mfccStft;
+    private float [] power;
+    private float [] mfccPower;
+    private float [] column;
+    private float [][] spectrogram;
+    private float [][] melSpectrogram;
+    private float [][] mfccMel;
+    private float [][] mfcc;
+
+    //frames already computed for previous windows, one cache per feature
+    private final FrameCache [] frameCaches = new FrameCache [3];
+    private long computedFrames = 0;
+    private long reusedFrames = 0;
    
     public SignalProcessing(int sampleRate, int nMFCC, int nFFT, int nMels, int hopLength){
-        this.sampleRate = sampleRate;
-        this.nMFCC = nMFCC;
-        this.nFFT = nFFT;
-        this.nMels = nMels;
-        this.hopLength = hopLength;
+        this(new FeaturePlan(sampleRate, nMFCC, nFFT, nMels, hopLength));
     };
 
+    /* The plan can be shared. Working buffers are not, so use one instance per thread. */
+    public SignalProcessing(FeaturePlan plan){
+        this.plan = plan;
+        this.hopLength = plan.getHopLength();
+    }
+
+    public FeaturePlan getPlan(){
+        return plan;
+    }
+
+    public long getComputedFrames(){
+        return computedFrames;
+    }
+
+    public long getReusedFrames(){
+        return reusedFrames;
+    }
+
+    //Forgets cached frames, so the next window can start a new stream from position 0.
+    public void resetStream(){
+        Arrays.fill(frameCaches, null);
+    }
 
     public float [][] getMFCC(float [] inputBuffer32){
-        float [][] MFCC = jLibrosa.generateMFCCFeatures(inputBuffer32, sampleRate, nMFCC, nFFT, nMels, hopLength);
-        if (showPreprocessLogs) displayShape(MFCC);
-        return MFCC;
+        return getMFCC(inputBuffer32, UNKNOWN_POSITION);
+    }
+
+    /* [windowStartSample] is the position of the window on the stream. Interior frames of
+       overlapping windows are then only computed once. Returned array is reused by the next call. */
+    public float [][] getMFCC(float [] inputBuffer32, long windowStartSample){
+        if (mfccStft == null) {
+            mfccStft = new Stft(FeaturePlan.MFCC_FFT_SIZE, hopLength);
+            mfccPower = new float [mfccStft.getBinCount()];
+        }
+
+        int frames = mfccStft.getFrameCount(inputBuffer32.length);
+        if (mfcc == null || mfcc[0].length != frames) {
+            mfccMel = new float [plan.getNMels()][frames];
+            mfcc = new float [plan.getNMFCC()][frames];
+        }
+
+        computeFrames(inputBuffer32, windowStartSample, MFCC, mfccMel);
+        powerToDb(mfccMel);
+        dct(mfccMel, plan.getDctBasis(), mfcc);
+
+        if (showPreprocessLogs) displayShape(mfcc);
+        return mfcc;
     }
 
     public float [][] getMelSpectrogram(float [] inputBuffer32){
-        float [][] melSpectrogram = jLibrosa.generateMelSpectroGram(inputBuffer32, sampleRate, nFFT, nMels, hopLength);
+        return getMelSpectrogram(inputBuffer32, UNKNOWN_POSITION);
+    }
+
+    //Returned array is reused by the next call.
+    public float [][] getMelSpectrogram(float [] inputBuffer32, long windowStartSample){
+        if (stft == null) createStft();
+
+        int frames = stft.getFrameCount(inputBuffer32.length);
+        if (melSpectrogram == null || melSpectrogram[0].length != frames) {
+            melSpectrogram = new float [plan.getNMels()][frames];
+        }
+
+        computeFrames(inputBuffer32, windowStartSample, MEL_SPECTROGRAM, melSpectrogram);
         if (showPreprocessLogs) displayShape(melSpectrogram);
         return melSpectrogram;
     }
     
     public float[][] getSpectrogram(float [] inputBuffer32){
-        featureExtractor.setSampleRate(sampleRate);
-		featureExtractor.setN_mfcc(nMFCC);
-        featureExtractor.setN_fft(nFFT);
-		featureExtractor.setN_mels(nMels);
-		featureExtractor.setHop_length(hopLength);
-
-        Complex [][] stft = featureExtractor.extractSTFTFeaturesAsComplexValues(inputBuffer32, true);
-        //float [][] spectrogram = getSpectroAbsVal(stft);
-        float [][] spectrogram = getFloatABSValue(stft);
+        return getSpectrogram(inputBuffer32, UNKNOWN_POSITION);
+    }
+
+    //Returned array is reused by the next call.
+    public float[][] getSpectrogram(float [] inputBuffer32, long windowStartSample){
+        if (stft == null) createStft();
+
+        int frames = stft.getFrameCount(inputBuffer32.length);
+        if (spectrogram == null || spectrogram[0].length != frames) {
+            spectrogram = new float [stft.getBinCount()][frames];
+        }
+
+        computeFrames(inputBuffer32, windowStartSample, SPECTROGRAM, spectrogram);
         if (showPreprocessLogs) displayShape(spectrogram);
         return spectrogram;
     }
 
-    private float [][] getFloatABSValue(Complex [][] spectro){
+    private void createStft(){
+        stft = new Stft(plan.getNFFT(), hopLength);
+        power = new float [stft.getBinCount()];
+    }
 
-        float[][] spectroAbsVal = new float[spectro.length][spectro[0].length];
-		
-		for(int i=0;i<spectro.length;i++) {
-			for(int j=0;j<spectro[0].length;j++) {
-				Complex complexVal = spectro[i][j];
-				spectroAbsVal[i][j] = (float) complexVal.abs();
-			}
-		}
+    /* Fills [out] as [rows][frames]. Interior frames are looked up by their position on the
+       stream first. Edge frames depend on the reflect padding of this window, so they are
+       always computed. */
+    private void computeFrames(float [] signal, long windowStartSample, int feature, float [][] out){
+        Stft frameStft = feature == MFCC ? mfccStft : stft;
+        frameStft.checkSignal(signal);
+        int frames = out[0].length;
+        int rows = out.length;
+
+        FrameCache cache = null;
+        if (windowStartSample >= 0 && windowStartSample % hopLength == 0) {
+            cache = frameCaches[feature];
+            if (cache == null || !cache.fits(frames, rows)) {
+                cache = new FrameCache(frames, rows);
+                frameCaches[feature] = cache;
+            }
+        }
+        if (column == null || column.length < rows) column = new float [rows];
+
+        long firstFrame = windowStartSample / hopLength;
+        for (int frame = 0; frame < frames; frame++) {
+            float [] values;
+            if (cache != null && frameStft.isInterior(frame, signal.length)) {
+                long key = firstFrame + frame;
+                values = cache.get(key);
+                if (values == null) {
+                    values = cache.put(key);
+                    computeColumn(signal, frame, feature, values);
+                } else {
+                    reusedFrames += 1;
+                }
+            } else {
+                values = column;
+                computeColumn(signal, frame, feature, values);
+            }
 
-        return spectroAbsVal;
+            for (int row = 0; row < rows; row++) {
+                out[row][frame] = values[row];
+            }
+        }
+    }
+
+    private void computeColumn(float [] signal, int frame, int feature, float [] out){
+        computedFrames += 1;
+        switch (feature) {
+            case SPECTROGRAM:
+                stft.powerFrame(signal, frame, power);
+                for (int bin = 0; bin < power.length; bin++) {
+                    out[bin] = (float) Math.sqrt(power[bin]);
+                }
+                break;
+            case MEL_SPECTROGRAM:
+                stft.powerFrame(signal, frame, power);
+                plan.getMelFilterbank().apply(power, out);
+                break;
+            case MFCC:
+                mfccStft.powerFrame(signal, frame, mfccPower);
+                plan.getMfccFilterbank().apply(mfccPower, out);
+                break;
+        }
     }
 
+    /* Ring of feature columns keyed by absolute frame index (stream position / hopLength).
+       Holds one window worth of frames, so every frame of the current window has its own slot. */
+    private static class FrameCache {
+        private final long [] keys;
+        private final float [][] columns;
+
+        FrameCache(int capacity, int rows){
+            this.keys = new long [capacity];
+            this.columns = new float [capacity][rows];
+            Arrays.fill(keys, -1);
+        }
+
+        boolean fits(int capacity, int rows){
+            return keys.length == capacity && columns[0].length == rows;
+        }
+
+        float [] get(long key){
+            int slot = (int) (key % keys.length);
+            return keys[slot] == key ? columns[slot] : null;
+        }
+
+        float [] put(long key){
+            int slot = (int) (key % keys.length);
+            keys[slot] = key;
+            return columns[slot];
+        }
+    }
+
+    //In place, 10 * log10(S) with a -100 dB floor and an 80 dB range below the peak.
+    private void powerToDb(float [][] melS){
+        float maxValue = -100.0f;
+        for (float [] row : melS) {
+            for (int j = 0; j < row.length; j++) {
+                float magnitude = Math.abs(row[j]);
+                row[j] = magnitude > 1.0E-10f ? (float) (10.0 * Math.log10(magnitude)) : -100.0f;
+                if (row[j] > maxValue) maxValue = row[j];
+            }
+        }
+
+        float minValue = maxValue - 80.0f;
+        for (float [] row : melS) {
+            for (int j = 0; j < row.length; j++) {
+                if (row[j] < minValue) row[j] = minValue;
+            }
+        }
+    }
+
+    private void dct(float [][] logMel, float [][] basis, float [][] out){
+        int frames = out[0].length;
+        for (int i = 0; i < basis.length; i++) {
+            float [] basisRow = basis[i];
+            float [] outRow = out[i];
+            for (int frame = 0; frame < frames; frame++) {
+                float sum = 0.0f;
+                for (int k = 0; k < basisRow.length; k++) {
+                    sum += basisRow[k] * logMel[k][frame];
+                }
+                outRow[frame] = sum;
+            }
+        }
+    }
 
     private float [][] getSpectroAbsVal(Complex [][] spectro){
 
@@ -179,7 +364,7 @@ public class SignalProcessing{
 
         int FRAMES = spectrogram.length;
         int MEL_BINS = spectrogram[0].length;
-        float[][][][] inputTensor = new float[1][FRAMES][MEL_BINS][1];
+        float[][][][] inputTensor = new float[1][MEL_BINS][FRAMES][1];
      
 
         for (int frame = 0; frame < FRAMES; frame++) {
@@ -191,6 +376,35 @@ public class SignalProcessing{
         return inputTensor;
     }
 
+    //Same layout as reshapeTo4D(), written straight into a model input.
+    public void flatten(float [][] features, FloatBuffer dst){
+        checkInputSize(features, dst);
+        for (float [] row : features) {
+            dst.put(row);
+        }
+    }
+
+    //Transposed layout, written straight into a model input.
+    public void flattenAndTranspose(float [][] features, FloatBuffer dst){
+        checkInputSize(features, dst);
+        int rows = features.length;
+        int columns = features[0].length;
+
+        for (int column = 0; column < columns; column++) {
+            for (int row = 0; row < rows; row++) {
+                dst.put(features[row][column]);
+            }
+        }
+    }
+
+    private void checkInputSize(float [][] features, FloatBuffer dst){
+        int featureSize = features.length * features[0].length;
+        if (featureSize != dst.remaining()) {
+            throw new IllegalArgumentException("Feature shape [" + features.length + ", " + features[0].length
+                + "] does not match the model input size of " + dst.remaining() + ". Check your spectrogram parameters.");
+        }
+    }
+
     public float[][] complexTo2DFloat(Complex[][] c) {
         final int length = c.length;
         float[][] f = new float[length][];
@@ -0,0 +1,112 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+/* Cuts overlapping windows from a stream of samples.
+
+   Samples are written into a circular buffer of [audioLength]. Once the first
+   window is full, a window is emitted every [audioStride] samples, so the
+   overlapping region is never shifted or copied back into place. The only copy
+   is the snapshot into a pooled frame, which is what the consumer owns.
+
+   For example, audioLength = 16000 and audioStride = 4000 emits a 1 second
+   window every 250ms at 16kHz.
+*/
+
+public class SlidingWindow {
+
+    private static final String LOG_TAG = "Sliding_Window";
+    static final double MISSING_SAMPLE_THRESHOLD = 0.40; //final windows missing more than this are dropped
+
+    private final int audioLength;
+    private final int audioStride;
+    private final short[] ring;
+    private final FramePool<short[]> framePool;
+
+    private int writeIndex = 0; //oldest sample once the ring is full
+    private int untilNextWindow;
+    private int windowCount = 0;
+
+    public SlidingWindow(int audioLength, int audioStride, FramePool<short[]> framePool) {
+        if (audioStride <= 0) {
+            throw new IllegalArgumentException("audioStride must be greater than 0. Received: " + audioStride);
+        }
+        this.audioLength = audioLength;
+        this.audioStride = audioStride;
+        this.framePool = framePool;
+        this.ring = new short[audioLength];
+        this.untilNextWindow = audioLength;
+    }
+
+    public int getWindowCount() {
+        return windowCount;
+    }
+
+    public SlidingWindow write(short[] src, int offset, int length, AudioChunk audioChunk) {
+        while (length > 0) {
+            int count = Math.min(length, untilNextWindow);
+            copyToRing(src, offset, count);
+            offset += count;
+            length -= count;
+            untilNextWindow -= count;
+
+            if (untilNextWindow == 0) {
+                emit(audioChunk, 0);
+                untilNextWindow = audioStride;
+            }
+        }
+        return this;
+    }
+
+    /* Emits the final partial window, padded with silence, if enough real samples are left.
+       After the first window, most of the next one is audio that was already emitted, so
+       only the samples that arrived since then count, i.e. the missing part of the stride. */
+    public boolean flush(AudioChunk audioChunk) {
+        int pendingLength = windowCount == 0 ? audioLength : audioStride;
+        if (untilNextWindow == pendingLength) {
+            return false;
+        }
+
+        double missingSamplesRatio = (double) untilNextWindow / (double) Math.min(pendingLength, audioLength);
+        if (missingSamplesRatio >= MISSING_SAMPLE_THRESHOLD) {
+            Log.d(LOG_TAG, "Under threshold. Padding not required");
+            return false;
+        }
+
+        Log.d(LOG_TAG, "Missing samples found in final window..");
+        emit(audioChunk, untilNextWindow);
+        untilNextWindow = pendingLength;
+        return true;
+    }
+
+    private void copyToRing(short[] src, int offset, int count) {
+        //only the latest [audioLength] samples can end up in a window
+        if (count > ring.length) {
+            offset += count - ring.length;
+            writeIndex = (writeIndex + count - ring.length) % ring.length;
+            count = ring.length;
+        }
+
+        int firstPart = Math.min(count, ring.length - writeIndex);
+        System.arraycopy(src, offset, ring, writeIndex, firstPart);
+        System.arraycopy(src, offset + firstPart, ring, 0, count - firstPart);
+        writeIndex = (writeIndex + count) % ring.length;
+    }
+
+    private void emit(AudioChunk audioChunk, int missingSamples) {
+        int available = audioLength - missingSamples;
+        int start = (writeIndex + missingSamples) % ring.length;
+        short[] frame = framePool.acquire();
+
+        int firstPart = Math.min(available, ring.length - start);
+        System.arraycopy(ring, start, frame, 0, firstPart);
+        System.arraycopy(ring, 0, frame, firstPart, available - firstPart);
+
+        if (missingSamples > 0) {
+            new AudioProcessing().addSilence(missingSamples, frame, available);
+        }
+
+        windowCount += 1;
+        audioChunk.get(frame);
+    }
+}
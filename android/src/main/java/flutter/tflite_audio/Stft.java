@@ -0,0 +1,119 @@
+package flutter.tflite_audio;
+
+/* Short-time Fourier transform with the same framing as JLibrosa.
+
+   - Signal is centred by reflect padding nFFT/2 samples on both sides
+   - Periodic Hann window of nFFT samples
+   - 1 + signalLength/hopLength frames
+
+   Padding is resolved by index, so the padded signal is never built. The window,
+   frame buffer and FFT are created once per instance and reused for every frame.
+   Results are [bins][frames], where bins = 1+nFFT/2, to match JLibrosa.
+
+   Not thread safe.
+*/
+
+public class Stft {
+
+    private final int nFFT;
+    private final int hopLength;
+    private final float[] window;
+    private final float[] frame;
+    private final float[] bins;
+    private final RealFFT fft;
+
+    public Stft(int nFFT, int hopLength) {
+        if (hopLength <= 0) {
+            throw new IllegalArgumentException("Hop length must be greater than 0. Received: " + hopLength);
+        }
+        this.nFFT = nFFT;
+        this.hopLength = hopLength;
+        this.fft = new RealFFT(nFFT);
+        this.frame = new float[nFFT];
+        this.bins = new float[fft.getBinCount()];
+
+        this.window = new float[nFFT];
+        for (int i = 0; i < nFFT; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / nFFT));
+        }
+    }
+
+    public int getBinCount() {
+        return fft.getBinCount();
+    }
+
+    public int getFrameCount(int signalLength) {
+        return 1 + signalLength / hopLength;
+    }
+
+    public int getHopLength() {
+        return hopLength;
+    }
+
+    public int getFFTSize() {
+        return nFFT;
+    }
+
+    /* Whether a frame lies fully inside the signal. Only edge frames read reflect padding,
+       so an interior frame only depends on the samples it covers. */
+    public boolean isInterior(int frameIndex, int signalLength) {
+        int start = frameIndex * hopLength - nFFT / 2;
+        return start >= 0 && start + nFFT <= signalLength;
+    }
+
+    /* |X|^2 of every frame, written into [out] as [bins][frames]. */
+    public void powerSpectrogram(float[] signal, float[][] out) {
+        checkOutput(signal, out);
+        int frames = getFrameCount(signal.length);
+        for (int f = 0; f < frames; f++) {
+            powerFrame(signal, f, bins);
+            for (int k = 0; k < bins.length; k++) {
+                out[k][f] = bins[k];
+            }
+        }
+    }
+
+    /* |X| of every frame, written into [out] as [bins][frames]. */
+    public void magnitudeSpectrogram(float[] signal, float[][] out) {
+        checkOutput(signal, out);
+        int frames = getFrameCount(signal.length);
+        for (int f = 0; f < frames; f++) {
+            powerFrame(signal, f, bins);
+            for (int k = 0; k < bins.length; k++) {
+                out[k][f] = (float) Math.sqrt(bins[k]);
+            }
+        }
+    }
+
+    /* |X|^2 of a single frame, written into [out] (1+nFFT/2 values). */
+    public void powerFrame(float[] signal, int frameIndex, float[] out) {
+        int start = frameIndex * hopLength - nFFT / 2;
+        for (int i = 0; i < nFFT; i++) {
+            frame[i] = window[i] * signal[reflect(start + i, signal.length)];
+        }
+        fft.powerSpectrum(frame, out);
+    }
+
+    //Index into the reflect-padded signal, without the edge sample being repeated.
+    private static int reflect(int index, int length) {
+        if (index < 0) return -index;
+        if (index >= length) return 2 * (length - 1) - index;
+        return index;
+    }
+
+    public void checkSignal(float[] signal) {
+        if (signal.length <= nFFT / 2) {
+            throw new IllegalArgumentException("Signal of " + signal.length
+                + " samples is too short to pad for nFFT " + nFFT);
+        }
+    }
+
+    private void checkOutput(float[] signal, float[][] out) {
+        checkSignal(signal);
+        int frames = getFrameCount(signal.length);
+        if (out.length != bins.length || out[0].length != frames) {
+            throw new IllegalArgumentException("Expected output of [" + bins.length + ", " + frames
+                + "]. Received: [" + out.length + ", " + out[0].length + "]");
+        }
+    }
+}
@@ -9,16 +9,18 @@ import android.content.Intent;
 import android.content.res.AssetManager;
 import android.content.res.AssetFileDescriptor;
 import android.content.pm.PackageManager;
+import android.media.AudioManager;
 import android.net.Uri;
 import android.provider.Settings;
 import android.util.Log;
 import android.os.Looper;
+import android.os.ParcelFileDescriptor;
 import android.os.Handler;
+import android.os.SystemClock;
 
 import androidx.core.app.ActivityCompat;
 import androidx.annotation.NonNull;
 
-import org.tensorflow.lite.Interpreter;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
@@ -26,15 +28,17 @@ import java.io.IOException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
@@ -72,10 +76,26 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
     private String audioDirectory;
     AudioFile audioFile;
 
+    // batch and parallel file recognition variables
+    private static final int PARALLEL_BLOCK_SIZE = 8; //consecutive windows per worker, so features are still shared
+    private List<String> audioFiles; //null unless a batch was requested
+    private int numOfWorkers;
+    private BatchRecognition batchRecognition;
+    private static final int MAX_BATCH_INPUT_BYTES = 4 * 1024 * 1024; //activations grow with the input
+    private int windowsPerBatch; //windows per invocation in file mode
+
     // working label variables
     private List<String> labels;
 
-    private Interpreter tfLite;
+    private static final long DEFAULT_MODEL_CACHE_BYTES = 64L * 1024 * 1024;
+    private final ModelCache<LoadedModel> modelCache = new ModelCache<>(DEFAULT_MODEL_CACHE_BYTES);
+    private int modelHandle; //model used when a stream does not ask for one
+    private InterpreterPool interpreterPool; //every recognition path checks out its own interpreter
+    private InterpreterPool recognizerPool; //where the session's interpreter goes back to
+    private int numOfInterpreters;
+    private int warmUpRuns; //zero-input inferences run when a model is loaded
+    private static final int WARM_UP_SAMPLE_RATE = 16000; //for models that take the sample rate as an input
+    private int inputSize;
 
     // flutter
     private AssetManager assetManager;
@@ -88,19 +108,47 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
 
     // recording variables
     private int bufferSize;
+    private int captureSampleRate;
     private int sampleRate;
     private int numOfInferences;
     private Recording recording;
+    private WindowQueue<?> windowQueue;
+    private String backpressure;
+    private int queueSize;
+
+    // activity gate variables
+    private static final String SILENCE_LABEL = "_silence_";
+    private double activityThreshold; //dB above the noise floor, 0 turns the gate off
+    private boolean reportSilence;
+    private boolean isFileStream;
+    private ActivityGate activityGate;
+    private volatile long silentWindows;
+    private boolean hasActiveWindow; //file mode: silence before the first active window is trimmed
+    private int pendingSilentWindows; //file mode: reported once an active window follows
+
+    // cascade variables
+    private LoadedModel cascadeModel; //second stage, null without a cascade
+    private float cascadeThreshold;
+    private String cascadeLabel; //null triggers on any label
+    private int cascadeLookback;
+    private InterpreterPool cascadePool; //where the second stage's interpreter goes back to
+    private InterpreterPool batchPool; //created the file's batched runner, while it runs
+    private Cascade cascade;
 
     // input/output variables
     private int [] inputShape;
     // private int [] outputShape;
     private int audioLength;
+    private int audioStride;
     private boolean transposeAudio;
     private boolean transposeSpectro;
     private String inputType;
     private boolean outputRawScores;
 
+    // preprocessing, created once per session
+    private FeaturePlan featurePlan; //kept until the spectrogram parameters change
+    private WindowRecognizer recognizer;
+
     // default specrogram variables
     private int nMFCC = 20;
     private int nFFT = 256;
@@ -111,13 +159,16 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
     private String modelPath;
     private String labelPath;
     private Object isAssetObj;
-    private int numThreads;
+    private CpuOptions cpuOptions;
 
     // labelsmoothing variables
     private float detectionThreshold;
     private long averageWindowDuration;
     private long minimumTimeBetweenSamples;
     private int suppressionTime;
+    private String smoothingMode;
+    private LabelSmoothing labelSmoothing; //one per recognition session
+    private long windowCount; //file windows recognised in the current session
 
     // Used to extract raw audio data
     // private MediaCodec mediaCodec;
@@ -154,6 +205,7 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
     public void onDetachedFromEngine(FlutterPluginBinding binding) {
         this.applicationContext = null;
         this.assetManager = null;
+        this.modelCache.closeAll();
 
         this.methodChannel.setMethodCallHandler(null);
         this.methodChannel = null;
@@ -192,14 +244,34 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
 
         switch (call.method) {
             case "loadModel":
-                this.numThreads = (int) arguments.get("numThreads");
+                this.cpuOptions = new CpuOptions(
+                        (int) arguments.get("numThreads"),
+                        getBoolean(arguments, "useXNNPACK", true),
+                        getBoolean(arguments, "allowFp16", false),
+                        getBoolean(arguments, "cancellable", false),
+                        getBoolean(arguments, "allowBufferHandleOutput", false));
+                Object interpretersObj = arguments.get("numOfInterpreters");
+                this.numOfInterpreters = interpretersObj == null ? 0 : (int) interpretersObj;
+                Object warmUpObj = arguments.get("warmUpRuns");
+                this.warmUpRuns = warmUpObj == null ? 0 : (int) warmUpObj;
                 this.inputType = (String) arguments.get("inputType");
                 this.outputRawScores = (boolean) arguments.get("outputRawScores");
                 this.modelPath = (String) arguments.get("model");
                 this.labelPath = (String) arguments.get("label");
                 this.isAssetObj = arguments.get("isAsset");
-                loadModel();
+                int handle = loadModel();
+                Map<String, Object> loadResult = new HashMap<>();
+                loadResult.put("modelHandle", handle);
+                loadResult.put("cpuOptions", cpuOptions.toMap());
+                putWarmUpTimes(loadResult, modelCache.get(handle).getWarmUpNanos());
                 Log.d(LOG_TAG, "loadModel parameters: " + arguments);
+                result.success(loadResult);
+                break;
+            case "closeModel":
+                result.success(modelCache.close((int) arguments.get("modelHandle")));
+                break;
+            case "setModelCacheBudget":
+                modelCache.setBudget((long) (int) arguments.get("megabytes") * 1024 * 1024);
                 result.success(null);
                 break;
             case "setSpectrogramParameters":
@@ -209,6 +281,7 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
                 this.nFFT = (int) arguments.get("nFFT");
                 this.nMels = (int) arguments.get("nMels");
                 this.hopLength = (int) arguments.get("hopLength");
+                this.featurePlan = null;
                 Log.d(LOG_TAG, "Spectrogram parameters: " + arguments);
                 result.success(null);
                 break;
@@ -228,6 +301,7 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
         this.events = events;
 
         Log.d(LOG_TAG, "Parameters: " + arguments);
+        if (!selectModel(arguments)) return;
 
         // label smoothing variables
         double detectObj = (double) arguments.get("detectionThreshold");
@@ -237,20 +311,53 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
         int minTimeObj = (int) arguments.get("minimumTimeBetweenSamples");
         this.minimumTimeBetweenSamples = (long) minTimeObj;
         this.suppressionTime = (int) arguments.get("suppressionTime");
+        Object smoothingObj = arguments.get("smoothingMode");
+        this.smoothingMode = smoothingObj == null ? LabelSmoothing.MOVING_AVERAGE : (String) smoothingObj;
 
         switch ((String) arguments.get("method")) {
             case "setAudioRecognitionStream":
                 this.bufferSize = (int) arguments.get("bufferSize");
                 this.sampleRate = (int) arguments.get("sampleRate");
                 this.numOfInferences = (int) arguments.get("numOfInferences");
+                Object backpressureObj = arguments.get("backpressure");
+                this.backpressure = backpressureObj == null ? WindowQueue.DROP_OLDEST : (String) backpressureObj;
+                Object queueSizeObj = arguments.get("queueSize");
+                this.queueSize = queueSizeObj == null ? 2 : (int) queueSizeObj;
+                Object captureRateObj = arguments.get("captureSampleRate");
+                this.captureSampleRate = captureRateObj == null ? 0 : (int) captureRateObj;
+                this.isFileStream = false;
+                determineActivityGate(arguments);
                 this.audioLength = determineInput(arguments); 
+                this.audioStride = determineStride(arguments);
                 this.transposeAudio = determineAudio();
+                if (!determineCascade(arguments)) return;
                 checkPermissions(REQUEST_RECORD_AUDIO);
                 break;
             case "setFileRecognitionStream":
                 this.audioDirectory = (String) arguments.get("audioDirectory");
+                this.audioFiles = null;
                 this.sampleRate = (int) arguments.get("sampleRate");
+                Object fileWorkersObj = arguments.get("numOfWorkers");
+                this.numOfWorkers = fileWorkersObj == null ? 1 : (int) fileWorkersObj;
+                Object batchSizeObj = arguments.get("batchSize");
+                this.windowsPerBatch = batchSizeObj == null ? 1 : (int) batchSizeObj;
+                this.isFileStream = true;
+                this.cascadeModel = null;
+                determineActivityGate(arguments);
                 this.audioLength = determineInput(arguments);
+                this.audioStride = determineStride(arguments);
+                this.transposeAudio = determineAudio();
+                checkPermissions(REQUEST_READ_EXTERNAL_STORAGE);
+                break;
+            case "setBatchRecognitionStream":
+                this.audioFiles = (List<String>) arguments.get("audioFiles");
+                this.sampleRate = (int) arguments.get("sampleRate");
+                Object workersObj = arguments.get("numOfWorkers");
+                this.numOfWorkers = workersObj == null ? 0 : (int) workersObj;
+                this.activityThreshold = 0;
+                this.cascadeModel = null;
+                this.audioLength = determineInput(arguments);
+                this.audioStride = determineStride(arguments);
                 this.transposeAudio = determineAudio();
                 checkPermissions(REQUEST_READ_EXTERNAL_STORAGE);
                 break;
@@ -259,6 +366,10 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
         }
 
     }
+    private boolean isAsset() {
+        return this.isAssetObj != null && (boolean) isAssetObj;
+    }
+
    public String getAssetLookupKey( String modelPath) {
         return FlutterInjector.instance().flutterLoader().getLookupKeyForAsset(modelPath);
     }
@@ -289,6 +400,19 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
         }
     }
 
+    //A stride of 0 keeps back-to-back windows. Must be called after determineInput()
+    private int determineStride(HashMap arguments) {
+
+        Object strideObj = arguments.get("audioStride");
+        int audioStride = strideObj == null ? 0 : (int) strideObj;
+
+        if (audioStride <= 0) {
+            return audioLength;
+        }
+
+        Log.d(LOG_TAG, "Overlapping windows. Emitting " + audioLength + " samples every " + audioStride + " samples");
+        return audioStride;
+    }
 
     private boolean determineAudio(){
 
@@ -313,10 +437,22 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
         this.events = null;
     }
 
-    private void loadModel(){
+    /* Models stay in the cache after loading, so loading the same model with the same
+       options again only selects it. Returns the model's handle. */
+    private int loadModel(){
         Log.d(LOG_TAG, "model name is: " + modelPath);
-        boolean isAsset = this.isAssetObj != null && (boolean) isAssetObj;
-        MappedByteBuffer buffer;
+        boolean isAsset = isAsset();
+        String cacheKey = isAsset + "|" + modelPath + "|" + labelPath + "|" + inputType + "|" + outputRawScores
+                + "|" + cpuOptions + "|" + numOfInterpreters;
+
+        int cachedHandle = modelCache.getHandle(cacheKey);
+        if (cachedHandle != 0) {
+            Log.d(LOG_TAG, "Model already loaded. Handle: " + cachedHandle);
+            selectModel(cachedHandle, modelCache.get(cachedHandle));
+            return cachedHandle;
+        }
+
+        MappedByteBuffer modelBuffer;
         String key;
 
         try {
@@ -327,40 +463,94 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
                 FileChannel fileChannel = inputStream.getChannel();
                 long startOffset = fileDescriptor.getStartOffset();
                 long declaredLength = fileDescriptor.getDeclaredLength();
-                buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+                modelBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
             } else {
                 FileInputStream inputStream = new FileInputStream(modelPath);
                 FileChannel fileChannel = inputStream.getChannel();
                 long declaredLength = fileChannel.size();
-                buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, declaredLength);
+                modelBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, declaredLength);
             }
 
-            final Interpreter.Options tfliteOptions = new Interpreter.Options();
-            tfliteOptions.setNumThreads(numThreads);
-            this.tfLite = new Interpreter(buffer, tfliteOptions);
-
         } catch (IOException e) {
             throw new RuntimeException("Failed to load model: ", e);
         }
 
-        this.inputShape = tfLite.getInputTensor(0).shape();
-        Log.d(LOG_TAG, "inputShape: " + Arrays.toString(inputShape));
+        int capacity = numOfInterpreters > 0 ? numOfInterpreters : Runtime.getRuntime().availableProcessors();
+        InterpreterPool pool = new InterpreterPool(modelBuffer, cpuOptions, capacity);
+
+        //shapes, input/output buffers and output map are bound to each interpreter once
+        ModelRunner runner = pool.acquire();
+        int [] modelInputShape = runner.getInputShape();
+        int modelInputSize = runner.getInputSize();
+        long [] warmUpNanos = runner.warmUp(warmUpRuns, WARM_UP_SAMPLE_RATE);
+        pool.release(runner);
+        Log.d(LOG_TAG, "inputShape: " + Arrays.toString(modelInputShape));
         
         // load labels
         Log.d(LOG_TAG, "label name is: " + labelPath);
+        List<String> modelLabels = null;
 
         if (labelPath.length() > 0) {
             if (isAsset) {
                 key = getAssetLookupKey(labelPath);
-                loadLabels(assetManager, key);
+                modelLabels = loadLabels(assetManager, key);
             } else {
-                loadLabels(null, labelPath);
+                modelLabels = loadLabels(null, labelPath);
             }
         }
 
+        LoadedModel model = new LoadedModel(pool, modelInputShape, modelInputSize, modelLabels,
+                inputType, outputRawScores, modelBuffer.capacity(), warmUpNanos);
+        int handle = modelCache.put(cacheKey, model);
+        selectModel(handle, model);
+        return handle;
+    }
+
+    private static boolean getBoolean(HashMap arguments, String key, boolean defaultValue) {
+        Object value = arguments.get(key);
+        return value == null ? defaultValue : (boolean) value;
     }
 
-    private void loadLabels(AssetManager assetManager, String path) {
+    //Times are in milliseconds. The warm time is the average of the runs after the first.
+    private void putWarmUpTimes(Map<String, Object> loadResult, long [] warmUpNanos) {
+        if (warmUpNanos.length == 0) return;
+        loadResult.put("coldInvokeTime", warmUpNanos[0] / 1e6);
+
+        if (warmUpNanos.length == 1) return;
+        long warmNanos = 0;
+        for (int i = 1; i < warmUpNanos.length; i++) {
+            warmNanos += warmUpNanos[i];
+        }
+        loadResult.put("warmInvokeTime", warmNanos / 1e6 / (warmUpNanos.length - 1));
+    }
+
+    //The selected model is used by every stream started from now on.
+    private void selectModel(int handle, LoadedModel model) {
+        this.modelHandle = handle;
+        this.interpreterPool = model.getInterpreterPool();
+        this.inputShape = model.getInputShape();
+        this.inputSize = model.getInputSize();
+        this.labels = model.getLabels();
+        this.inputType = model.getInputType();
+        this.outputRawScores = model.isOutputRawScores();
+    }
+
+    //Picks the model a stream asked for by handle, or the one that was loaded last.
+    private boolean selectModel(HashMap arguments) {
+        Object handleObj = arguments.get("modelHandle");
+        int handle = handleObj == null || (int) handleObj <= 0 ? modelHandle : (int) handleObj;
+        LoadedModel model = modelCache.get(handle);
+
+        if (model == null) {
+            Log.e(LOG_TAG, "Error: Model " + handle + " is not loaded. Call loadModel() before starting recognition.");
+            if (events != null) events.error("modelNotLoaded", "Model " + handle + " is not loaded", null);
+            return false;
+        }
+        selectModel(handle, model);
+        return true;
+    }
+
+    private List<String> loadLabels(AssetManager assetManager, String path) {
         BufferedReader br;
         try {
             if (assetManager != null) {
@@ -369,12 +559,13 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
                 br = new BufferedReader(new InputStreamReader(new FileInputStream(path)));
             }
             String line;
-            labels = new ArrayList<>(); // resets label input
+            List<String> labels = new ArrayList<>();
             while ((line = br.readLine()) != null) {
                 labels.add(line);
             }
             Log.d(LOG_TAG, "Labels: " + labels.toString());
             br.close();
+            return labels;
         } catch (IOException e) {
             throw new RuntimeException("Failed to read label file: ", e);
         }
@@ -405,7 +596,7 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
                         applicationContext.getPackageName());
                 boolean hasReadPerm = readPerm == PackageManager.PERMISSION_GRANTED;
                 if (hasReadPerm) {
-                    loadAudioFile();
+                    loadAudioFiles();
                     Log.d(LOG_TAG, "Permission already granted.");
                 } else {
                     requestPermission(REQUEST_READ_EXTERNAL_STORAGE);
@@ -456,7 +647,7 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
                 break;
             case REQUEST_READ_EXTERNAL_STORAGE:
                 if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                    loadAudioFile();
+                    loadAudioFiles();
                     Log.d(LOG_TAG, "Permission granted. Loading audio file...");
                 } else {
                     showRationaleDialog(
@@ -500,73 +691,319 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
 
     }
 
+    private void loadAudioFiles() {
+        if (audioFiles != null) startBatchRecognition();
+        else loadAudioFile();
+    }
+
     private void loadAudioFile() {
         Log.d(LOG_TAG, "Loading audio file to buffer");
-        boolean isAsset = this.isAssetObj != null && (boolean) isAssetObj;
-        AssetFileDescriptor fileDescriptor = null;
-        long startOffset = 0;
-        long declaredLength;
-
         try {
-            if (isAsset) {
-                // Get exact location of the file in the asssets folder.
-                String key = getAssetLookupKey(audioDirectory);
-                fileDescriptor = assetManager.openFd(key);
-                startOffset = fileDescriptor.getStartOffset();
-                declaredLength = fileDescriptor.getDeclaredLength();
-            } else {
-                FileInputStream inputStream = new FileInputStream(audioDirectory);
-                FileChannel fileChannel = inputStream.getChannel();
-                declaredLength = fileChannel.size();
-            }
-
+            AudioSource source = openAudioSource(audioDirectory);
             Log.d(LOG_TAG, "Audio file sucessfully loaded");
-            byte[] byteData = extractRawData(fileDescriptor, startOffset, declaredLength);
-            startPreprocessing(byteData);
-
+            startPreprocessing(source);
         } catch (IOException e) {
             Log.d(LOG_TAG, "Error loading audio file: " + e);
         }
     }
 
-    private byte[] extractRawData(AssetFileDescriptor fileDescriptor, long startOffset, long declaredLength) {
-        Log.d(LOG_TAG, "Extracting byte data from audio file");
+    /* Each worker gets its own interpreter instance from the pool, with the model's numThreads,
+       so a run uses up to numOfWorkers * numThreads threads. 0 workers uses every core. */
+    private synchronized void startBatchRecognition() {
+        if (batchRecognition != null) {
+            return;
+        }
+
+        //workers open files long after this returns, while loadModel and new streams change the fields
+        boolean isAsset = isAsset();
+        int sampleRate = this.sampleRate;
+
+        batchRecognition = new BatchRecognition(
+                listAudioFiles(audioFiles, isAsset),
+                determineWorkers(),
+                audioLength,
+                audioStride,
+                sampleRate,
+                path -> openAudioSource(path, isAsset, sampleRate),
+                createWorkerFactory(),
+                createWorkerRecycler(),
+                outputRawScores ? null : createSmoothingFactory(),
+                new BatchRecognition.Listener() {
+                    @Override
+                    public void onResult(Map<String, Object> result) {
+                        getResult(result);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        stopStream();
+                        clearBatchRecognition();
+                    }
+                });
+        batchRecognition.start();
+    }
+
+    //Never more workers than interpreters, or the extra workers would only wait for one.
+    private int determineWorkers() {
+        int workers = numOfWorkers > 0 ? numOfWorkers : Runtime.getRuntime().availableProcessors();
+        return Math.min(workers, interpreterPool.getCapacity());
+    }
 
-        MediaDecoder decoder = new MediaDecoder(fileDescriptor, startOffset, declaredLength);
-        AudioProcessing audioData = new AudioProcessing();
+    //Recognizers for worker threads, each with an interpreter checked out of the pool.
+    private Supplier<WindowRecognizer> createWorkerFactory() {
+        InterpreterPool pool = interpreterPool;
+        FeaturePlan plan = updateFeaturePlan();
+        String inputType = this.inputType;
+        boolean transposeSpectro = this.transposeSpectro;
+        int audioLength = this.audioLength;
+        int audioStride = this.audioStride;
+        int sampleRate = this.sampleRate;
+
+        return () -> new WindowRecognizer(pool.acquire(), plan, inputType,
+                transposeSpectro, audioLength, audioStride, sampleRate);
+    }
 
-        byte[] byteData = {};
-        byte[] readData;
-        while ((readData = decoder.readByteData()) != null) {
-            byteData = audioData.appendByteData(readData, byteData);
-            Log.d(LOG_TAG, "data chunk length: " + readData.length);
+    //Label smoothing for worker threads, with the settings of the stream that started them.
+    private Supplier<LabelSmoothing> createSmoothingFactory() {
+        List<String> labels = this.labels;
+        long averageWindowDuration = this.averageWindowDuration;
+        float detectionThreshold = this.detectionThreshold;
+        int suppressionTime = this.suppressionTime;
+        long minimumTimeBetweenSamples = this.minimumTimeBetweenSamples;
+        String smoothingMode = this.smoothingMode;
+        int capacity = getSmoothingCapacity();
+
+        return () -> new LabelSmoothing(labels, averageWindowDuration, detectionThreshold, suppressionTime,
+                minimumTimeBetweenSamples, smoothingMode, capacity);
+    }
+
+    private Consumer<WindowRecognizer> createWorkerRecycler() {
+        InterpreterPool pool = interpreterPool;
+        return recognizer -> pool.release(recognizer.getRunner());
+    }
+
+    //Directories (asset or file system) are replaced by the files they contain, in name order.
+    private List<String> listAudioFiles(List<String> paths, boolean isAsset) {
+        List<String> files = new ArrayList<>();
+
+        for (String path : paths) {
+            String [] children = null;
+            try {
+                if (isAsset) {
+                    children = assetManager.list(getAssetLookupKey(path));
+                } else if (new File(path).isDirectory()) {
+                    children = new File(path).list();
+                }
+            } catch (IOException e) {
+                Log.d(LOG_TAG, "Failed to list " + path + ": " + e);
+            }
+
+            if (children == null || children.length == 0) {
+                files.add(path);
+                continue;
+            }
+            Arrays.sort(children);
+            for (String child : children) {
+                if (isAsset || new File(path, child).isFile()) files.add(path + "/" + child);
+            }
+        }
+        return files;
+    }
+
+    private AudioSource openAudioSource(String path) throws IOException {
+        return openAudioSource(path, isAsset(), sampleRate);
+    }
+
+    private AudioSource openAudioSource(String path, boolean isAsset, int sampleRate) throws IOException {
+        AssetFileDescriptor fileDescriptor;
+        long startOffset = 0;
+        long declaredLength;
+
+        if (isAsset) {
+            // Get exact location of the file in the asssets folder.
+            String key = getAssetLookupKey(path);
+            fileDescriptor = assetManager.openFd(key);
+            startOffset = fileDescriptor.getStartOffset();
+            declaredLength = fileDescriptor.getDeclaredLength();
+        } else {
+            ParcelFileDescriptor parcelFileDescriptor = ParcelFileDescriptor.open(
+                    new File(path), ParcelFileDescriptor.MODE_READ_ONLY);
+            declaredLength = parcelFileDescriptor.getStatSize();
+            fileDescriptor = new AssetFileDescriptor(parcelFileDescriptor, 0, declaredLength);
         }
-        Log.d(LOG_TAG, "byte data length: " + byteData.length);
-        return byteData;
 
+        return AudioSource.open(fileDescriptor, startOffset, declaredLength, path, sampleRate);
     }
 
-    public synchronized void startPreprocessing(byte[] byteData) {
+    public synchronized void startPreprocessing(AudioSource source) {
         if (preprocessThread != null) {
             return;
         }
         preprocessThread = new Thread(
-                () -> preprocess(byteData));
+                () -> preprocess(source));
         preprocessThread.start();
     }
 
     //No noticable performance difference with subscribleOn and observableOn
-    public void preprocess(byte[] byteData) {
+    public void preprocess(AudioSource source) {
         Log.d(LOG_TAG, "Preprocessing audio file..");
+        startSession();
+        AudioFile file = source.createAudioFile(audioLength, audioStride);
+
+        InterpreterPool pool = interpreterPool;
+        ModelRunner batchRunner = createBatchRunner(pool);
+        if (batchRunner != null) {
+            batchPool = pool;
+            try {
+                subscribeToFileInBatches(file, batchRunner);
+                readAudioSource(source, file);
+            } finally {
+                batchPool = null;
+                pool.closeBatchRunner(batchRunner);
+            }
+            return;
+        }
+
+        if (determineWorkers() > 1) {
+            subscribeToFileInParallel(file);
+            readAudioSource(source, file);
+            return;
+        }
+
+        //windows are recognised on this thread, so the interpreter is free once reading returns
+        acquireRecognizer();
+        try {
+            subscribeToFile(file);
+            readAudioSource(source, file);
+        } finally {
+            releaseRecognizer();
+        }
+    }
+
+    //A decoder or file error still ends the stream, otherwise it and any workers wait for windows forever.
+    private void readAudioSource(AudioSource source, AudioFile file) {
+        try {
+            source.read(file);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Error: Failed to read audio file: " + e);
+            runOnUIThread(() -> {
+                if (events != null) events.error("audioFileError", "Failed to read audio file: " + e.getMessage(), null);
+            });
+            file.stop();
+            clearPreprocessing();
+        }
+    }
 
-        audioFile = new AudioFile(byteData, audioLength);
-        audioFile.getObservable()
+    private void subscribeToFile(AudioFile file) {
+        audioFile = file;
+        FramePool<short[]> framePool = file.getFramePool();
+        windowQueue = null; //file windows are recognised synchronously, so nothing is ever dropped
+        file.getObservable()
                 .doOnComplete(() -> {
                     stopStream(); 
                     clearPreprocessing();
                 })
-                .subscribe(this::startRecognition);
-        audioFile.splice();
+                .subscribe(frame -> {
+                    writeToActivityGate(frame, windowCount);
+                    startRecognition(frame, windowCount++);
+                    framePool.release(frame);
+                });
+    }
+
+    //Several consecutive windows are recognised with one invocation, then published in window order.
+    private void subscribeToFileInBatches(AudioFile file, ModelRunner batchRunner) {
+        audioFile = file;
+        FramePool<short[]> framePool = file.getFramePool();
+        windowQueue = null;
+
+        WindowRecognizer batchRecognizer = new WindowRecognizer(batchRunner, updateFeaturePlan(), inputType,
+                transposeSpectro, audioLength, audioStride, sampleRate);
+        WindowBatcher batcher = new WindowBatcher(batchRecognizer,
+                (windowIndex, outputScores, inferenceTimeMs) -> {
+                    if (events == null) return;
+                    long windowEndSample = audioLength + windowIndex * audioStride;
+                    publishResult(outputScores, windowEndSample * 1000 / sampleRate, inferenceTimeMs);
+                });
+
+        file.getObservable()
+                .doOnComplete(() -> {
+                    batcher.flush();
+                    stopStream();
+                    clearPreprocessing();
+                })
+                .subscribe(frame -> {
+                    long windowIndex = windowCount++;
+                    writeToActivityGate(frame, windowIndex);
+                    if (isActive(windowIndex)) {
+                        batcher.add(frame, windowIndex);
+                    } else {
+                        batcher.flush(); //earlier windows are published first
+                        onSilentWindow();
+                    }
+                    framePool.release(frame);
+                });
+    }
+
+    /* Returns null when windows are recognised one at a time: batching was not asked for, or
+       the model cannot be batched, such as decodedWav models with their sample rate input. */
+    private ModelRunner createBatchRunner(InterpreterPool pool) {
+        int windowBytes = inputSize * 4;
+        int batchSize = Math.min(windowsPerBatch, Math.max(1, MAX_BATCH_INPUT_BYTES / windowBytes));
+        if (batchSize < 2 || inputType.equals("decodedWav")) return null;
+
+        try {
+            ModelRunner batchRunner = pool.createBatchRunner(batchSize);
+            Log.d(LOG_TAG, "Recognising " + batchSize + " windows per invocation");
+            return batchRunner;
+        } catch (RuntimeException e) {
+            Log.d(LOG_TAG, "Model cannot be batched, recognising one window at a time: " + e);
+            return null;
+        }
+    }
+
+    //Windows are recognised on several workers, then published in window order.
+    private void subscribeToFileInParallel(AudioFile file) {
+        audioFile = file;
+        FramePool<short[]> framePool = file.getFramePool();
+        windowQueue = null;
+
+        ParallelRecognition parallelRecognition = new ParallelRecognition(
+                determineWorkers(),
+                PARALLEL_BLOCK_SIZE,
+                audioLength,
+                createWorkerFactory(),
+                createWorkerRecycler(),
+                new ParallelRecognition.ResultHandler() {
+                    @Override
+                    public void onResult(long windowIndex, float [] outputScores, long inferenceTimeMs) {
+                        if (events == null) return;
+                        long windowEndSample = audioLength + windowIndex * audioStride;
+                        publishResult(outputScores, windowEndSample * 1000 / sampleRate, inferenceTimeMs);
+                    }
+
+                    //in window order, so leading and trailing silence are trimmed as in the serial path
+                    @Override
+                    public void onSilence(long windowIndex) {
+                        if (events == null) return;
+                        onSilentWindow();
+                    }
+                });
+
+        file.getObservable()
+                .doOnComplete(() -> parallelRecognition.finish(() -> {
+                    stopStream();
+                    clearPreprocessing();
+                }))
+                .subscribe(frame -> {
+                    long windowIndex = windowCount++;
+                    writeToActivityGate(frame, windowIndex);
+                    if (isActive(windowIndex)) {
+                        parallelRecognition.offer(frame, windowIndex);
+                    } else {
+                        parallelRecognition.skipSilent(windowIndex);
+                    }
+                    framePool.release(frame);
+                });
     }
 
     public synchronized void startRecording() {
@@ -581,138 +1018,390 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
     //Some performance difference with subscribeOn and observeON (android only?)
     private void record() {
         android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_AUDIO);
+        startSession();
+        acquireRecognizer(); //returned once the last window has been recognised
 
-        recording = new Recording(bufferSize, audioLength, sampleRate, numOfInferences);
+        recording = new Recording(bufferSize, audioLength, audioStride, sampleRate, determineCaptureRate(), numOfInferences);
         recording.setReentrantLock(recordingBufferLock);
+        recording.setActivityGate(activityGate);
+        if (cascadeModel != null) startCascade();
+        recording.setDirectCapture(isDirectInput() && cascade == null);
+
+        if (recording.isDirectCapture()) recordDirect();
+        else recordFrames();
+         
+        recording.start();
+    }
+
+    private void recordFrames() {
+        FramePool<short []> framePool = recording.getFramePool();
+
+        //bounded handoff, so a slow model drops windows instead of drifting behind
+        WindowQueue<short []> queue = new WindowQueue<>(queueSize, backpressure, framePool::release);
+        windowQueue = queue;
         recording.getObservable()
-                .subscribeOn(Schedulers.io()) //run [observable] on background thread
-                .observeOn(Schedulers.computation()) //tell [observer] to receive data on computation thread
+                .doOnComplete(queue::close)
+                .subscribe(queue::offer);
+
+        queue.getObservable()
+                .subscribeOn(Schedulers.io()) //take() blocks between windows, so the queue is drained on an io thread
                 .doOnComplete(() -> {
+                    releaseRecognizer();
                     stopStream();
                     clearRecording();
                     })
-                .subscribe(this::startRecognition);
-         
-        recording.start();
+                .subscribe(frame -> {
+                    startRecognition(frame, queue.getTakenSequence());
+                    framePool.release(frame);
+                });
     }
 
-    private void startRecognition(short[] inputBuffer16) {
-        Log.v(LOG_TAG, "Recognition started.");
+    //Raw audio windows are captured as model-ready float32 buffers and handed to the interpreter as is.
+    private void recordDirect() {
+        FramePool<ByteBuffer> directPool = recording.getDirectPool();
 
-        if (events == null) {
+        WindowQueue<ByteBuffer> queue = new WindowQueue<>(queueSize, backpressure, directPool::release);
+        windowQueue = queue;
+        recording.getDirectObservable()
+                .doOnComplete(queue::close)
+                .subscribe(queue::offer);
+
+        queue.getObservable()
+                .subscribeOn(Schedulers.io())
+                .doOnComplete(() -> {
+                    releaseRecognizer();
+                    stopStream();
+                    clearRecording();
+                    })
+                .subscribe(window -> {
+                    startRecognition(window, queue.getTakenSequence());
+                    directPool.release(window);
+                });
+    }
+
+    //0 records at the model's sample rate, -1 at the device's native output rate.
+    private int determineCaptureRate() {
+        if (captureSampleRate > 0) return captureSampleRate;
+        if (captureSampleRate == 0) return sampleRate;
+
+        AudioManager audioManager = (AudioManager) applicationContext.getSystemService(Context.AUDIO_SERVICE);
+        String nativeRate = audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
+        int captureRate = nativeRate == null ? sampleRate : Integer.parseInt(nativeRate);
+        Log.d(LOG_TAG, "Native capture rate: " + captureRate);
+        return captureRate;
+    }
+
+    //Direct capture only applies when a recorded window is exactly the model input.
+    private boolean isDirectInput() {
+        boolean isAudioInput = inputType.equals("rawAudio") || inputType.equals("decodedWav");
+        return isAudioInput && audioStride == audioLength && inputSize == audioLength;
+    }
+
+    //Resets per-session state, so smoothing sees every result of this stream (and only this stream).
+    private void startSession() {
+        windowCount = 0;
+        labelSmoothing = outputRawScores ? null : createLabelSmoothing();
+
+        //enough history for every window that can be queued behind the one being recognised
+        activityGate = activityThreshold > 0
+                ? new ActivityGate(sampleRate, activityThreshold, audioLength + (queueSize + 2) * audioStride)
+                : null;
+        silentWindows = 0;
+        hasActiveWindow = false;
+        pendingSilentWindows = 0;
+    }
+
+    /* Resolves the second-stage model, if one was asked for. Its windows are the first
+       stage's plus the lookback, which defaults to whatever a raw audio model needs on top. */
+    private boolean determineCascade(HashMap arguments) {
+        Object handleObj = arguments.get("cascadeModelHandle");
+        int handle = handleObj == null ? 0 : (int) handleObj;
+        this.cascadeModel = null;
+        if (handle <= 0) return true;
+
+        //both stages would wait on the same interpreters, which deadlocks a pool of one
+        if (handle == modelHandle) {
+            Log.e(LOG_TAG, "Error: Cascade model " + handle + " is the selected model.");
+            events.error("cascadeModelSelected", "Cascade model " + handle
+                    + " is also the first-stage model. Load a separate second-stage model", null);
+            return false;
+        }
+
+        LoadedModel model = modelCache.get(handle);
+        if (model == null) {
+            Log.e(LOG_TAG, "Error: Cascade model " + handle + " is not loaded.");
+            events.error("modelNotLoaded", "Cascade model " + handle + " is not loaded", null);
+            return false;
+        }
+
+        //spectrogram parameters and transposing belong to the stream, i.e. the first stage
+        boolean isAudioInput = model.getInputType().equals("rawAudio") || model.getInputType().equals("decodedWav");
+        if (!isAudioInput) {
+            Log.e(LOG_TAG, "Error: Cascade model " + handle + " takes " + model.getInputType() + " input.");
+            events.error("cascadeInputType", "Cascade model must take rawAudio or decodedWav input. Received: "
+                    + model.getInputType(), null);
+            return false;
+        }
+
+        Object lookbackObj = arguments.get("cascadeLookback");
+        int lookback = lookbackObj == null ? 0 : (int) lookbackObj;
+        if (lookback <= 0) lookback = Math.max(0, model.getInputSize() - audioLength);
+
+        if (audioLength + lookback != model.getInputSize()) {
+            Log.e(LOG_TAG, "Error: Cascade model takes " + model.getInputSize() + " samples. Received: " + (audioLength + lookback));
+            events.error("cascadeInputMismatch", "Cascade model takes " + model.getInputSize()
+                    + " samples, but audioLength + cascadeLookback is " + (audioLength + lookback), null);
+            return false;
+        }
+
+        Object thresholdObj = arguments.get("cascadeThreshold");
+        this.cascadeThreshold = thresholdObj == null ? 0.5f : (float) (double) thresholdObj;
+        this.cascadeLabel = (String) arguments.get("cascadeLabel");
+        this.cascadeLookback = lookback;
+        this.cascadeModel = model;
+        Log.d(LOG_TAG, "Cascade to model " + handle + " | lookback: " + lookback + " samples");
+        return true;
+    }
+
+    //The second stage reads its lookback from a history of captured samples.
+    private void startCascade() {
+        int triggerIndex = cascadeLabel == null || labels == null ? -1 : labels.indexOf(cascadeLabel);
+        if (cascadeLabel != null && triggerIndex < 0) {
+            Log.w(LOG_TAG, "Cascade label " + cascadeLabel + " not found. Triggering on any label.");
+        }
+
+        SampleHistory history = new SampleHistory(audioLength + cascadeLookback + (queueSize + 2) * audioStride);
+        recording.setSampleHistory(history);
+
+        //second stages take audio, so the feature plan is never used
+        cascadePool = cascadeModel.getInterpreterPool();
+        WindowRecognizer secondStage = new WindowRecognizer(cascadePool.acquire(), updateFeaturePlan(),
+                cascadeModel.getInputType(), false, audioLength + cascadeLookback, audioStride, sampleRate);
+        cascade = new Cascade(secondStage, history, cascadeThreshold, triggerIndex,
+                audioLength, audioStride, cascadeLookback);
+    }
+
+    private void recogniseSecondStage(long windowIndex) {
+        long startTime = SystemClock.elapsedRealtime();
+        float [] outputScores = cascade.recognise(windowIndex);
+        if (outputScores == null) {
             return;
         }
+        long inferenceTime = SystemClock.elapsedRealtime() - startTime;
 
-        SignalProcessing signalProcessing = new SignalProcessing(sampleRate, nMFCC, nFFT, nMels, hopLength);
-        AudioProcessing audioData = new AudioProcessing();
+        Map<String, Object> finalResults = new HashMap<>();
+        List<String> secondStageLabels = cascadeModel.getLabels();
+        if (cascadeModel.isOutputRawScores() || secondStageLabels == null) {
+            finalResults.put("recognitionResult", Arrays.toString(outputScores));
+        } else {
+            int best = 0;
+            for (int i = 1; i < outputScores.length; i++) {
+                if (outputScores[i] > outputScores[best]) best = i;
+            }
+            finalResults.put("recognitionResult", secondStageLabels.get(best));
+        }
+        finalResults.put("stage", 2);
+        finalResults.put("inferenceTime", inferenceTime);
+        finalResults.put("hasPermission", true);
+        putWindowCounts(finalResults);
 
-        float [] inputBuffer32; //for spectro
-        float [][] inputData2D; //for raw audio
-        float [][][][] inputData4D; // for spectro
-        Object [] inputArray;
+        getResult(finalResults);
+    }
 
-        int [] outputShape = tfLite.getOutputTensor(0).shape();
-        int outputSize = Arrays.stream(outputShape).max().getAsInt();
-        float [][] outputTensor = new float [1][outputSize];
-        Map<Integer, Object> outputMap = new HashMap<>();
-     
-        
-        Map<String, Object> finalResults = new HashMap();
+    private void determineActivityGate(HashMap arguments) {
+        Object thresholdObj = arguments.get("activityThreshold");
+        this.activityThreshold = thresholdObj == null ? 0 : (double) thresholdObj;
+        Object silenceModeObj = arguments.get("silenceMode");
+        this.reportSilence = "report".equals(silenceModeObj);
+    }
 
-        long startTime = new Date().getTime();
+    //File windows are written to the gate here. Recording writes captured audio itself.
+    private void writeToActivityGate(short [] frame, long windowIndex) {
+        if (activityGate == null) return;
+        int newSamples = windowIndex == 0 ? audioLength : Math.min(audioStride, audioLength);
+        activityGate.write(frame, audioLength - newSamples, newSamples);
+    }
 
-        switch (inputType) {
+    private boolean isActive(long windowIndex) {
+        if (activityGate == null) return true;
+        //file windows further apart than their length are written back to back
+        long windowStart = windowIndex * (isFileStream ? Math.min(audioStride, audioLength) : audioStride);
+        return activityGate.isActive(windowStart, windowStart + audioLength);
+    }
 
-            case "mfcc":
-      
-                inputBuffer32 = audioData.normalizeBySigned16(inputBuffer16);
-                float[][] mfcc = signalProcessing.getMFCC(inputBuffer32);
+    private void onSilentWindow() {
+        silentWindows += 1;
+        if (!reportSilence) return;
+        if (!isFileStream) {
+            publishSilence();
+            return;
+        }
+        if (hasActiveWindow) pendingSilentWindows += 1;
+    }
 
-                inputData2D = transposeSpectro
-                    ? signalProcessing.transpose2D(mfcc)
-                    : mfcc;
+    //File mode: silence between active windows is reported once the next one arrives, so trailing silence is trimmed.
+    private void onActiveWindow() {
+        hasActiveWindow = true;
+        for (int i = 0; i < pendingSilentWindows; i++) {
+            publishSilence();
+        }
+        pendingSilentWindows = 0;
+    }
 
-                tfLite.run(inputData2D, outputTensor);
-                break;
+    //Checks out an interpreter for a stream that is recognised one window at a time.
+    private void acquireRecognizer() {
+        recognizerPool = interpreterPool;
+        recognizer = new WindowRecognizer(recognizerPool.acquire(), updateFeaturePlan(), inputType, transposeSpectro,
+                audioLength, audioStride, sampleRate);
+    }
 
-            case "melSpectrogram":
-              
-                inputBuffer32 = audioData.normalizeBySigned16(inputBuffer16);
-                float[][] melSpectrogram = signalProcessing.getMelSpectrogram(inputBuffer32);
-                
-                inputData4D = transposeSpectro
-                    ? signalProcessing.reshapeTo4DAndTranspose(melSpectrogram)
-                    : signalProcessing.reshapeTo4D(melSpectrogram);
-                    
-                tfLite.run(inputData4D, outputTensor);
-                break;
+    private void releaseRecognizer() {
+        if (cascade != null) {
+            cascadePool.release(cascade.getRecognizer().getRunner());
+            cascade = null;
+            cascadePool = null;
+        }
+        if (recognizer == null) return;
+        recognizerPool.release(recognizer.getRunner());
+        recognizer = null;
+        recognizerPool = null;
+    }
 
-            case "spectrogram":
-           
-                inputBuffer32 = audioData.normalizeBySigned16(inputBuffer16);
-                float[][] spectrogram = signalProcessing.getSpectrogram(inputBuffer32);
-            
-                inputData4D = transposeSpectro
-                    ? signalProcessing.reshapeTo4DAndTranspose(spectrogram)
-                    : signalProcessing.reshapeTo4D(spectrogram);
-
-                tfLite.run(inputData4D, outputTensor);
-                break;
+    private FeaturePlan updateFeaturePlan() {
+        if (featurePlan == null || !featurePlan.matches(sampleRate, nMFCC, nFFT, nMels, hopLength)) {
+            featurePlan = new FeaturePlan(sampleRate, nMFCC, nFFT, nMels, hopLength);
+        }
+        return featurePlan;
+    }
 
-            case "decodedWav":
-                
-                inputData2D = transposeAudio 
-                    ? audioData.normaliseAndTranspose(inputBuffer16) 
-                    : audioData.normalise(inputBuffer16);
-                     
-                int [] sampleRateList = new int[] { sampleRate }; 
-                inputArray = new Object[] { inputData2D, sampleRateList};
-
-                outputMap.put(0, outputTensor);
-                tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
-                break;
+    private LabelSmoothing createLabelSmoothing() {
+        return new LabelSmoothing(
+                labels,
+                averageWindowDuration,
+                detectionThreshold,
+                suppressionTime,
+                minimumTimeBetweenSamples,
+                smoothingMode,
+                getSmoothingCapacity());
+    }
 
-            case "rawAudio":
+    //expected number of results inside the averaging window
+    private int getSmoothingCapacity() {
+        long resultIntervalMs = Math.max(1, (long) audioStride * 1000 / sampleRate);
+        return (int) (averageWindowDuration / resultIntervalMs) + 2;
+    }
 
-                inputData2D = transposeAudio 
-                    ? audioData.normaliseAndTranspose(inputBuffer16) 
-                    : audioData.normalise(inputBuffer16);
+    //[windowIndex] counts windows from the start of the session, including dropped ones.
+    private void startRecognition(short[] inputBuffer16, long windowIndex) {
+        Log.v(LOG_TAG, "Recognition started.");
 
-                tfLite.run(inputData2D, outputTensor);
-                break;
+        long windowEndSample = audioLength + windowIndex * audioStride;
+        long sampleTimeMs = windowEndSample * 1000 / sampleRate;
+
+        if (events == null) {
+            return;
+        }
+        if (!isActive(windowIndex)) {
+            onSilentWindow();
+            return;
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        float [] outputScores = recognizer.recognise(inputBuffer16, windowIndex);
+        if (outputScores == null) {
+            return;
+        }
+        long lastProcessingTimeMs = SystemClock.elapsedRealtime() - startTime;
+
+        publishResult(outputScores, sampleTimeMs, lastProcessingTimeMs);
+
+        if (cascade != null && cascade.shouldTrigger(outputScores, windowIndex)) {
+            recogniseSecondStage(windowIndex);
+        }
+    }
+
+    //Raw audio window that was captured directly in the model's input format.
+    private void startRecognition(ByteBuffer window, long windowIndex) {
+        Log.v(LOG_TAG, "Recognition started.");
+
+        long windowEndSample = audioLength + windowIndex * audioStride;
+        long sampleTimeMs = windowEndSample * 1000 / sampleRate;
+
+        if (events == null) {
+            return;
+        }
+        if (!isActive(windowIndex)) {
+            onSilentWindow();
+            return;
+        }
 
+        long startTime = SystemClock.elapsedRealtime();
+        float [] outputScores = recognizer.recognise(window);
+        if (outputScores == null) {
+            return;
         }
+        long lastProcessingTimeMs = SystemClock.elapsedRealtime() - startTime;
 
-        // working recognition variables
-        long lastProcessingTimeMs = new Date().getTime() - startTime;
-        Log.v(LOG_TAG, "Raw Scores: " + Arrays.toString(outputTensor[0]));
+        publishResult(outputScores, sampleTimeMs, lastProcessingTimeMs);
+    }
+
+    private void publishResult(float [] outputScores, long sampleTimeMs, long lastProcessingTimeMs) {
+        if (activityGate != null) onActiveWindow();
+
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, "Raw Scores: " + Arrays.toString(outputScores));
+        }
    
+        Map<String, Object> finalResults = new HashMap<>(); //handed to the event channel, so one per result
+
         if (!outputRawScores) {
-            LabelSmoothing labelSmoothing = new LabelSmoothing(
-                    labels,
-                    averageWindowDuration,
-                    detectionThreshold,
-                    suppressionTime,
-                    minimumTimeBetweenSamples);
-
-            long currentTime = System.currentTimeMillis();
             final LabelSmoothing.RecognitionResult recognitionResult = labelSmoothing
-                    .processLatestResults(outputTensor[0], currentTime);
+                    .processLatestResults(outputScores, sampleTimeMs);
             finalResults.put("recognitionResult", recognitionResult.foundCommand);
         } else {
-            finalResults.put("recognitionResult", Arrays.toString(outputTensor[0]));
+            finalResults.put("recognitionResult", Arrays.toString(outputScores));
         }
 
         finalResults.put("inferenceTime", lastProcessingTimeMs);
         finalResults.put("hasPermission", true);
+        putWindowCounts(finalResults);
 
         getResult(finalResults);
     }
 
+    //Synthetic result for a window the activity gate found silent. Not smoothed.
+    private void publishSilence() {
+        Map<String, Object> finalResults = new HashMap<>();
+        finalResults.put("recognitionResult", SILENCE_LABEL);
+        finalResults.put("inferenceTime", 0L);
+        finalResults.put("hasPermission", true);
+        putWindowCounts(finalResults);
+
+        getResult(finalResults);
+    }
+
+    private void putWindowCounts(Map<String, Object> finalResults) {
+        WindowQueue<?> queue = windowQueue;
+        if (queue != null) {
+            finalResults.put("droppedWindows", queue.getDroppedCount());
+            finalResults.put("queuedWindows", queue.getQueuedCount());
+        }
+        if (activityGate != null) {
+            finalResults.put("silentWindows", silentWindows);
+        }
+        Cascade secondStage = cascade;
+        if (secondStage != null) {
+            finalResults.putIfAbsent("stage", 1);
+            finalResults.put("cascadeTriggers", secondStage.getTriggerCount());
+        }
+    }
+
     public void getResult(Map<String, Object> recognitionResult) {
         runOnUIThread(() -> {
             if (events != null) {
-                Log.v(LOG_TAG, "result: " + recognitionResult.toString());
+                if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+                    Log.v(LOG_TAG, "result: " + recognitionResult.toString());
+                }
                 events.success(recognitionResult);
             }
         });
@@ -730,11 +1419,25 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
 
     public void forceStop() {
            
+        cancelInference();
         stopRecording();
         stopPreprocessing();
+        stopBatchRecognition();
         //no need to have stop stream here, as it is called when observable is onComplete()
     }
 
+    //Only interpreters loaded with cancellable options stop mid-window. Covers the selected
+    //model, the one the current stream checked out, the cascade and a file's batched runner.
+    private void cancelInference() {
+        if (interpreterPool != null) interpreterPool.cancel();
+        InterpreterPool streamPool = recognizerPool;
+        if (streamPool != null && streamPool != interpreterPool) streamPool.cancel();
+        InterpreterPool secondStagePool = cascadePool;
+        if (secondStagePool != null) secondStagePool.cancel();
+        InterpreterPool filePool = batchPool;
+        if (filePool != null && filePool != interpreterPool) filePool.cancel();
+    }
+
     public void stopRecording(){
         if (recordingThread == null) {
             Log.d(LOG_TAG, "There is no ongoing recording. Breaking.");
@@ -778,6 +1481,20 @@ public class TfliteAudioPlugin implements MethodCallHandler, StreamHandler, Flut
         Log.d(LOG_TAG, "Prepocesing stopped.");
     }
 
+    public synchronized void stopBatchRecognition() {
+        if (batchRecognition == null) {
+            Log.d(LOG_TAG, "There is no ongoing batch recognition. Breaking.");
+            return;
+        }
+
+        batchRecognition.stop(); //completes once every worker has stopped
+    }
+
+    public synchronized void clearBatchRecognition() {
+        batchRecognition = null;
+        Log.d(LOG_TAG, "Batch recognition stopped.");
+    }
+
     private void runOnUIThread(Runnable runnable) {
         if (Looper.getMainLooper() == Looper.myLooper())
             runnable.run();
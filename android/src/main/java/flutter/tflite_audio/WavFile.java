@@ -0,0 +1,141 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/* Memory-mapped 16 bit WAV and raw PCM.
+
+   The file is mapped with FileChannel.map and the data chunk is exposed as a little endian
+   ShortBuffer view, so samples are read straight from the page cache. There is no decoder
+   and no copy onto the heap. Works for assets (using the offset and length of the asset's
+   file descriptor) and for files alike.
+
+   Only 16 bit integer PCM is supported. Anything else throws IllegalArgumentException,
+   so the caller can fall back to MediaDecoder.
+*/
+
+public class WavFile {
+
+    private static final String LOG_TAG = "Wav_File";
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final ShortBuffer samples;
+    private final int sampleRate;
+    private final int channelCount;
+
+    private WavFile(ShortBuffer samples, int sampleRate, int channelCount) {
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+    }
+
+    public static boolean isWav(String path) {
+        String lowerPath = path.toLowerCase(Locale.ROOT);
+        return lowerPath.endsWith(".wav") || lowerPath.endsWith(".wave");
+    }
+
+    public static boolean isPcm(String path) {
+        String lowerPath = path.toLowerCase(Locale.ROOT);
+        return lowerPath.endsWith(".pcm") || lowerPath.endsWith(".raw");
+    }
+
+    /* Maps [length] bytes from [offset]. Raw PCM has no header, so it is assumed to be mono
+       at [defaultSampleRate]. */
+    public static WavFile map(FileChannel channel, long offset, long length, boolean hasHeader, int defaultSampleRate) throws IOException {
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        return hasHeader ? parse(mapped) : fromPcm(mapped, defaultSampleRate);
+    }
+
+    public static WavFile fromPcm(ByteBuffer pcm16, int sampleRate) {
+        ShortBuffer samples = pcm16.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        return new WavFile(samples, sampleRate, 1);
+    }
+
+    public static WavFile parse(ByteBuffer buffer) {
+        ByteBuffer wav = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        if (wav.remaining() < 12 || !readId(wav, 0).equals("RIFF") || !readId(wav, 8).equals("WAVE")) {
+            throw new IllegalArgumentException("Not a RIFF/WAVE file");
+        }
+
+        int format = -1;
+        int channelCount = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+        int position = 12;
+
+        while (position + 8 <= wav.limit()) {
+            String chunkId = readId(wav, position);
+            long chunkSize = wav.getInt(position + 4) & 0xFFFFFFFFL;
+            int chunkStart = position + 8;
+
+            switch (chunkId) {
+                case "fmt ":
+                    format = wav.getShort(chunkStart) & 0xFFFF;
+                    channelCount = wav.getShort(chunkStart + 2) & 0xFFFF;
+                    sampleRate = wav.getInt(chunkStart + 4);
+                    bitsPerSample = wav.getShort(chunkStart + 14) & 0xFFFF;
+                    if (format == FORMAT_EXTENSIBLE && chunkSize >= 26) {
+                        format = wav.getShort(chunkStart + 24) & 0xFFFF; //first 2 bytes of the sub format GUID
+                    }
+                    break;
+
+                case "data":
+                    if (format != FORMAT_PCM || bitsPerSample != 16) {
+                        throw new IllegalArgumentException("Unsupported WAV format: " + format + ", " + bitsPerSample + " bit");
+                    }
+                    //streamed WAVs can declare a larger (or unknown) size than what was written
+                    int dataLength = (int) Math.min(chunkSize, wav.limit() - chunkStart);
+                    dataLength -= dataLength % 2;
+
+                    ByteBuffer data = wav.duplicate();
+                    data.position(chunkStart);
+                    data.limit(chunkStart + dataLength);
+                    ShortBuffer samples = data.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+
+                    Log.d(LOG_TAG, "sampleRate: " + sampleRate + " | channels: " + channelCount
+                            + " | samples: " + samples.limit());
+                    return new WavFile(samples, sampleRate, channelCount);
+
+                default:
+                    Log.v(LOG_TAG, "Skipping chunk: " + chunkId);
+            }
+
+            //chunks are padded to an even size
+            long next = chunkStart + chunkSize + (chunkSize % 2);
+            if (next > wav.limit()) break;
+            position = (int) next;
+        }
+
+        throw new IllegalArgumentException("WAV file has no data chunk");
+    }
+
+    private static String readId(ByteBuffer buffer, int position) {
+        char[] id = new char[4];
+        for (int i = 0; i < 4; i++) {
+            id[i] = (char) buffer.get(position + i);
+        }
+        return new String(id);
+    }
+
+    //Interleaved when there is more than one channel. Each call returns an independent view.
+    public ShortBuffer getSamples() {
+        return samples.duplicate();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+}
@@ -0,0 +1,111 @@
+package flutter.tflite_audio;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/* Recognises consecutive windows of a file several at a time.
+
+   Small keyword models spend most of an invocation on per-call overhead, so windows are
+   written to the slots of a batched runner and recognised with a single invocation once
+   every slot is full. The scores are then split back into one result per window, in
+   window order. Call flush() at the end of the file for the windows of a partial batch.
+
+   Features are extracted by [recognizer] in window order, so overlapping windows still
+   share feature frames. Not thread safe.
+
+   A cancelled run returns no scores. Its windows are dropped, and so is every window
+   after it, as the runner stays cancelled.
+*/
+
+public class WindowBatcher {
+
+    private static final String LOG_TAG = "Window_Batcher";
+
+    public interface Listener {
+        //[inferenceTimeMs] is the batch's inference time, shared out between its windows.
+        void onResult(long windowIndex, float [] outputScores, long inferenceTimeMs);
+    }
+
+    //The batched runner, as seen by the batcher.
+    interface Batch {
+        int getBatchSize();
+        int getScoresPerWindow();
+        boolean extractFeatures(short [] window, long windowIndex, int slot);
+        float [] run(); //null when cancelled
+    }
+
+    private final Batch batch;
+    private final Listener listener;
+    private final long [] windowIndices;
+    private int count = 0;
+    private boolean isCancelled = false;
+
+    //[recognizer] must run on a batched runner.
+    public WindowBatcher(WindowRecognizer recognizer, Listener listener) {
+        this(new Batch() {
+            private final ModelRunner runner = recognizer.getRunner();
+
+            @Override
+            public int getBatchSize() {
+                return runner.getBatchSize();
+            }
+
+            @Override
+            public int getScoresPerWindow() {
+                return runner.getScoresPerWindow();
+            }
+
+            @Override
+            public boolean extractFeatures(short [] window, long windowIndex, int slot) {
+                return recognizer.extractFeatures(window, windowIndex, runner.getInputBuffer(slot));
+            }
+
+            @Override
+            public float [] run() {
+                return runner.run();
+            }
+        }, listener);
+    }
+
+    WindowBatcher(Batch batch, Listener listener) {
+        this.batch = batch;
+        this.listener = listener;
+        this.windowIndices = new long [batch.getBatchSize()];
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    public void add(short [] window, long windowIndex) {
+        if (isCancelled || !batch.extractFeatures(window, windowIndex, count)) {
+            return;
+        }
+        windowIndices[count++] = windowIndex;
+        if (count == windowIndices.length) flush();
+    }
+
+    //Slots after [count] still hold the previous batch. Their scores are ignored.
+    public void flush() {
+        if (count == 0 || isCancelled) return;
+
+        long startTime = SystemClock.elapsedRealtime();
+        float [] outputScores = batch.run();
+        long inferenceTime = SystemClock.elapsedRealtime() - startTime;
+
+        if (outputScores == null) {
+            Log.d(LOG_TAG, "Batch cancelled. Dropped " + count + " windows");
+            isCancelled = true;
+        } else {
+            Log.v(LOG_TAG, "Recognised " + count + " windows in " + inferenceTime + "ms");
+            int scoresPerWindow = batch.getScoresPerWindow();
+            for (int slot = 0; slot < count; slot++) {
+                float [] windowScores = Arrays.copyOfRange(outputScores, slot * scoresPerWindow, (slot + 1) * scoresPerWindow);
+                listener.onResult(windowIndices[slot], windowScores, inferenceTime / count);
+            }
+        }
+        count = 0;
+    }
+}
@@ -0,0 +1,184 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import io.reactivex.rxjava3.core.Observable;
+
+/* Bounded handoff between capture and inference.
+
+   When inference is slower than real time, windows can no longer pile up without
+   limit. What happens once the queue is full depends on the policy:
+
+   - dropOldest: discards the oldest queued window to make room for the new one.
+   - keepLatest: only ever holds one window, which is replaced by newer windows.
+   - block: the producer waits until the consumer has taken a window.
+
+   Dropped windows are passed to [onDropped] so their frames can be recycled.
+   Every offered window gets a sequence number, so the consumer can tell which
+   window it is looking at even after drops.
+*/
+
+public class WindowQueue<T> {
+
+    private static final String LOG_TAG = "Window_Queue";
+
+    public static final String DROP_OLDEST = "dropOldest";
+    public static final String KEEP_LATEST = "keepLatest";
+    public static final String BLOCK = "block";
+
+    private final String policy;
+    private final Object[] items;
+    private final long[] sequences;
+    private final Consumer<T> onDropped;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int head = 0;
+    private int size = 0;
+    private long offeredCount = 0;
+    private long droppedCount = 0;
+    private long takenSequence = -1;
+    private boolean isClosed = false;
+
+    public WindowQueue(int capacity, String policy, Consumer<T> onDropped) {
+        switch (policy) {
+            case DROP_OLDEST:
+            case BLOCK:
+                break;
+            case KEEP_LATEST:
+                capacity = 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown backpressure policy: " + policy);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue size must be greater than 0. Received: " + capacity);
+        }
+
+        this.policy = policy;
+        this.items = new Object[capacity];
+        this.sequences = new long[capacity];
+        this.onDropped = onDropped;
+    }
+
+    public void offer(T item) {
+        lock.lock();
+        try {
+            long sequence = offeredCount++;
+
+            if (policy.equals(BLOCK)) {
+                while (size == items.length && !isClosed) {
+                    notFull.awaitUninterruptibly();
+                }
+            } else if (size == items.length) {
+                drop(removeFirst());
+            }
+
+            if (isClosed) {
+                drop(item);
+                return;
+            }
+
+            int tail = (head + size) % items.length;
+            items[tail] = item;
+            sequences[tail] = sequence;
+            size += 1;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until a window is available. Returns null once closed and drained.
+    public T take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0 && !isClosed) {
+                notEmpty.await();
+            }
+            if (size == 0) {
+                return null;
+            }
+            takenSequence = sequences[head];
+            T item = removeFirst();
+            notFull.signal();
+            return item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queued windows are still delivered, after which the consumer completes.
+    public void close() {
+        lock.lock();
+        try {
+            isClosed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drains the queue on the subscribed scheduler until closed.
+    public Observable<T> getObservable() {
+        return Observable.create(emitter -> {
+            T item;
+            while (!emitter.isDisposed() && (item = take()) != null) {
+                emitter.onNext(item);
+            }
+            emitter.onComplete();
+        });
+    }
+
+    // Sequence number of the window last returned by take(), counted from 0.
+    public long getTakenSequence() {
+        lock.lock();
+        try {
+            return takenSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T removeFirst() {
+        T item = (T) items[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        size -= 1;
+        return item;
+    }
+
+    private void drop(T item) {
+        droppedCount += 1;
+        Log.v(LOG_TAG, "Window dropped. Inference is slower than real time.");
+        if (onDropped != null) {
+            onDropped.accept(item);
+        }
+    }
+}
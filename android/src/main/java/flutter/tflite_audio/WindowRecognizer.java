@@ -0,0 +1,117 @@
+package flutter.tflite_audio;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/* Turns one window of audio into model scores: feature extraction for the model's input
+   type, then inference.
+
+   Owns everything a window needs (model runner, feature cache and scratch buffers), so a
+   recognizer can run on any thread, as long as it is used by one thread at a time. Give
+   each worker its own recognizer. The feature plan is immutable and can be shared.
+*/
+
+public class WindowRecognizer {
+
+    private static final String LOG_TAG = "Window_Recognizer";
+
+    private final ModelRunner runner;
+    private final String inputType;
+    private final boolean transposeSpectro;
+    private final int audioStride;
+    private final int sampleRate;
+
+    private final AudioProcessing audioProcessing = new AudioProcessing();
+    private final SignalProcessing signalProcessing;
+    private final float [] inputBuffer32;
+
+    public WindowRecognizer(ModelRunner runner, FeaturePlan plan, String inputType, boolean transposeSpectro,
+                            int audioLength, int audioStride, int sampleRate) {
+        this.runner = runner;
+        this.inputType = inputType;
+        this.transposeSpectro = transposeSpectro;
+        this.audioStride = audioStride;
+        this.sampleRate = sampleRate;
+        this.signalProcessing = new SignalProcessing(plan);
+        this.inputBuffer32 = new float [audioLength];
+    }
+
+    public ModelRunner getRunner() {
+        return runner;
+    }
+
+    //Starts a new stream, e.g. the next file. Window indices start from 0 again.
+    public void reset() {
+        signalProcessing.resetStream();
+    }
+
+    /* [windowIndex] counts windows from the start of the stream, so overlapping windows can
+       share feature frames. Returned scores are overwritten by the next call. */
+    public float [] recognise(short [] inputBuffer16, long windowIndex) {
+        if (!extractFeatures(inputBuffer16, windowIndex, runner.getInputBuffer())) {
+            return null;
+        }
+        return inputType.equals("decodedWav")
+                ? runner.run(sampleRate)
+                : runner.run();
+    }
+
+    //Writes the model input for one window to [inputData], e.g. a slot of a batched input.
+    public boolean extractFeatures(short [] inputBuffer16, long windowIndex, FloatBuffer inputData) {
+
+        //position of the current window on the sample clock
+        long windowStartSample = windowIndex * audioStride;
+
+        switch (inputType) {
+
+            case "mfcc":
+
+                audioProcessing.normalizeBySigned16(inputBuffer16, inputBuffer32);
+                float[][] mfcc = signalProcessing.getMFCC(inputBuffer32, windowStartSample);
+
+                if (transposeSpectro) signalProcessing.flattenAndTranspose(mfcc, inputData);
+                else signalProcessing.flatten(mfcc, inputData);
+
+                return true;
+
+            case "melSpectrogram":
+
+                audioProcessing.normalizeBySigned16(inputBuffer16, inputBuffer32);
+                float[][] melSpectrogram = signalProcessing.getMelSpectrogram(inputBuffer32, windowStartSample);
+
+                if (transposeSpectro) signalProcessing.flattenAndTranspose(melSpectrogram, inputData);
+                else signalProcessing.flatten(melSpectrogram, inputData);
+
+                return true;
+
+            case "spectrogram":
+
+                audioProcessing.normalizeBySigned16(inputBuffer16, inputBuffer32);
+                float[][] spectrogram = signalProcessing.getSpectrogram(inputBuffer32, windowStartSample);
+
+                if (transposeSpectro) signalProcessing.flattenAndTranspose(spectrogram, inputData);
+                else signalProcessing.flatten(spectrogram, inputData);
+
+                return true;
+
+            case "decodedWav":
+            case "rawAudio":
+
+                audioProcessing.normalise(inputBuffer16, inputData);
+                return true;
+
+            default:
+                Log.e(LOG_TAG, "Unknown input type: " + inputType);
+                return false;
+        }
+    }
+
+    //Raw audio window that was captured directly in the model's input format.
+    public float [] recognise(ByteBuffer window) {
+        return inputType.equals("decodedWav")
+                ? runner.run(window, sampleRate)
+                : runner.run(window);
+    }
+}
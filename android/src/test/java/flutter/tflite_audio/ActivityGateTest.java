@@ -0,0 +1,77 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+public class ActivityGateTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void testToneAfterQuietNoise() {
+
+        ActivityGate gate = new ActivityGate(SAMPLE_RATE, 10, SAMPLE_RATE * 4);
+        Random random = new Random(7);
+
+        gate.write(noise(random, SAMPLE_RATE, 30), 0, SAMPLE_RATE);
+        gate.write(tone(SAMPLE_RATE / 2, 300, 8000), 0, SAMPLE_RATE / 2);
+        gate.write(noise(random, SAMPLE_RATE, 30), 0, SAMPLE_RATE);
+
+        assertFalse(gate.isActive(4000, SAMPLE_RATE));
+        assertTrue(gate.isActive(SAMPLE_RATE, SAMPLE_RATE + 4000));
+        //past the hangover
+        assertFalse(gate.isActive(SAMPLE_RATE * 2, SAMPLE_RATE * 5 / 2));
+    }
+
+    @Test
+    public void testLoudNoise_absorbedByFloor() {
+
+        ActivityGate gate = new ActivityGate(SAMPLE_RATE, 10, SAMPLE_RATE * 4);
+        Random random = new Random(7);
+
+        gate.write(noise(random, SAMPLE_RATE / 2, 30), 0, SAMPLE_RATE / 2);
+        short [] loudNoise = noise(random, SAMPLE_RATE * 3, 1000);
+        gate.write(loudNoise, 0, loudNoise.length);
+
+        assertFalse(gate.isActive(SAMPLE_RATE * 3, SAMPLE_RATE * 7 / 2));
+    }
+
+    @Test
+    public void testDigitalSilence() {
+
+        ActivityGate gate = new ActivityGate(SAMPLE_RATE, 10, SAMPLE_RATE);
+        gate.write(new short [SAMPLE_RATE], 0, SAMPLE_RATE);
+
+        assertFalse(gate.isActive(0, SAMPLE_RATE));
+    }
+
+    @Test
+    public void testBeyondHistory_active() {
+
+        ActivityGate gate = new ActivityGate(SAMPLE_RATE, 10, SAMPLE_RATE);
+        gate.write(new short [SAMPLE_RATE * 2], 0, SAMPLE_RATE * 2);
+
+        assertTrue(gate.isActive(0, 4000));
+        //not analysed yet
+        assertTrue(gate.isActive(SAMPLE_RATE * 2, SAMPLE_RATE * 3));
+    }
+
+    private static short [] noise(Random random, int length, int amplitude) {
+        short [] samples = new short [length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (random.nextGaussian() * amplitude);
+        }
+        return samples;
+    }
+
+    private static short [] tone(int length, double frequency, int amplitude) {
+        short [] samples = new short [length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE) * amplitude);
+        }
+        return samples;
+    }
+}
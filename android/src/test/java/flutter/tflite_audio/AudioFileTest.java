@@ -7,6 +7,8 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 
 import java.util.Arrays;
@@ -91,6 +93,56 @@ public class AudioFileTest {
     }
 
 
+    @Test
+    public void testStreaming_splitChunks() {
+
+        short [] audioData = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+        int audioLength = 5;
+        short [] expectedData = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+        //3 byte chunks, so samples are split across chunks
+        List<Short> result = stream(audioData, audioLength, audioLength, 1, 3);
+        assertArrayEquals(convertToArray(result), expectedData);
+    }
+
+    @Test
+    public void testStreaming_splitChunks_highLowByte() {
+
+        //every low byte is 0x80 or above, so the byte carried between chunks is negative as a byte
+        short [] audioData = {-1, 0x01F0, (short) 0x80FF, -16, 0x7F80, -32768 + 0x90};
+        int audioLength = 3;
+
+        List<Short> result = stream(audioData, audioLength, audioLength, 1, 3);
+        assertArrayEquals(convertToArray(result), audioData);
+    }
+
+    @Test
+    public void testStreaming_stereo_splitFrames() {
+
+        //interleaved left/right, each frame averages to 1..6
+        short [] audioData = {0, 2, 1, 3, 3, 3, -4, 12, 5, 5, 6, 6};
+        int audioLength = 3;
+        short [] expectedData = {1, 2, 3, 4, 5, 6};
+
+        //5 byte chunks, so frames and samples are split across chunks
+        List<Short> result = stream(audioData, audioLength, audioLength, 2, 5);
+        assertArrayEquals(convertToArray(result), expectedData);
+    }
+
+    @Test
+    public void testStreaming_withStride_withPadding() {
+
+        short [] audioData = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        int audioLength = 4;
+        int audioStride = 3;
+        short [] expectedData = {1, 2, 3, 4, 4, 5, 6, 7, 7, 8, 9};
+        int expectedWithPadLength = 12;
+
+        short [] result = convertToArray(stream(audioData, audioLength, audioStride, 1, 8));
+        assertArrayEquals(Arrays.copyOfRange(result, 0, expectedData.length), expectedData);
+        assertEquals(result.length, expectedWithPadLength);
+    }
+
     //https://stackoverflow.com/questions/60072435/how-to-convert-short-into-listshort-in-java-with-streams
     public List <Short> convertToList(short [] shortArray){
         return IntStream.range(0, shortArray.length)
@@ -112,59 +164,41 @@ public class AudioFileTest {
     public List<Short> splice(short [] shortBuffer, int audioLength, int bufferSize){
 
         List <Short> result = new ArrayList<Short>();
-        AudioProcessing audioProcessing = new AudioProcessing();
-        AudioData audioData = new AudioData(audioLength, bufferSize);
-        boolean isSplicing = true;
-
-        for (int i = 0; i < shortBuffer.length; i++) {
-
-            if (!isSplicing) {
-                break;
-            }
-
-            short dataPoint = shortBuffer[i];
-
-            switch (audioData.getState(i)) {
-                case "append":
-                    audioData
-                        .append(dataPoint);
-                break;
-                case "recognise":
-                    System.out.println("recognising");
-                    audioData
-                        .append(dataPoint)
-                        .displayInference()
-                        .emit(data -> {
-                            result.addAll(convertToList(data));
-                        })
-                        .reset();
-                    break;
-                case "finalise":
-                    System.out.println("finalising");
-                    audioData
-                        .append(dataPoint)
-                        .displayInference()
-                        .emit(data -> {
-                            result.addAll(convertToList(data));
-                        });
-                    isSplicing = false;
-                    break;
-                case "padAndFinalise":
-                    System.out.println("padding and finalising");
-                    audioData
-                        .append(dataPoint)
-                        .padSilence(i)
-                        .displayInference()
-                        .emit(data -> {
-                            result.addAll(convertToList(data));
-                        });
-                    isSplicing = false;
-                    break;
-         
-                default:
-                    throw new AssertionError("Incorrect state when preprocessing");
-            }
+        ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize * 2).order(ByteOrder.LITTLE_ENDIAN);
+        byteBuffer.asShortBuffer().put(shortBuffer, 0, bufferSize);
+
+        AudioFile audioFile = new AudioFile(byteBuffer.array(), audioLength);
+        FramePool<short []> framePool = audioFile.getFramePool();
+        audioFile.getObservable()
+                .subscribe(data -> {
+                    result.addAll(convertToList(data));
+                    framePool.release(data);
+                });
+        audioFile.splice();
+        return result;
+    }
+
+    public List<Short> stream(short [] shortBuffer, int audioLength, int audioStride, int channelCount, int chunkSize){
+
+        List <Short> result = new ArrayList<Short>();
+        ByteBuffer byteBuffer = ByteBuffer.allocate(shortBuffer.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        byteBuffer.asShortBuffer().put(shortBuffer);
+        byte [] byteData = byteBuffer.array();
+
+        AudioFile audioFile = new AudioFile(audioLength, audioStride);
+        audioFile.setChannelCount(channelCount);
+        FramePool<short []> framePool = audioFile.getFramePool();
+        audioFile.getObservable()
+                .subscribe(data -> {
+                    result.addAll(convertToList(data));
+                    framePool.release(data);
+                });
+
+        for (int offset = 0; offset < byteData.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, byteData.length - offset);
+            audioFile.write(ByteBuffer.wrap(byteData, offset, length));
         }
+        audioFile.finish();
         return result;
     }
 
@@ -0,0 +1,93 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class LabelSmoothingTest {
+
+    private static final List<String> LABELS = Arrays.asList("_silence_", "yes", "no");
+    private static final float DELTA = 1e-5f;
+
+    @Test
+    public void testMovingAverage() {
+
+        LabelSmoothing labelSmoothing = new LabelSmoothing(LABELS, 1000, 0.3f, 0, 0);
+
+        labelSmoothing.processLatestResults(new float [] {0.0f, 0.9f, 0.1f}, 0);
+        labelSmoothing.processLatestResults(new float [] {0.0f, 0.1f, 0.9f}, 500);
+        LabelSmoothing.RecognitionResult result = labelSmoothing
+                .processLatestResults(new float [] {0.0f, 0.2f, 0.8f}, 1000);
+
+        assertEquals("no", result.foundCommand);
+        assertEquals((0.1f + 0.9f + 0.8f) / 3, result.score, DELTA);
+    }
+
+    @Test
+    public void testMovingAverage_prunesOldResults() {
+
+        LabelSmoothing labelSmoothing = new LabelSmoothing(LABELS, 1000, 0.3f, 0, 0);
+
+        labelSmoothing.processLatestResults(new float [] {0.0f, 0.9f, 0.1f}, 0);
+        labelSmoothing.processLatestResults(new float [] {0.0f, 0.1f, 0.9f}, 1500);
+        LabelSmoothing.RecognitionResult result = labelSmoothing
+                .processLatestResults(new float [] {0.0f, 0.3f, 0.7f}, 2000);
+
+        assertEquals("no", result.foundCommand);
+        assertEquals((0.9f + 0.7f) / 2, result.score, DELTA);
+    }
+
+    @Test
+    public void testMovingAverage_growsPastCapacity() {
+
+        LabelSmoothing labelSmoothing = new LabelSmoothing(
+                LABELS, 10000, 0.3f, 0, 0, LabelSmoothing.MOVING_AVERAGE, 2);
+
+        LabelSmoothing.RecognitionResult result = null;
+        for (int i = 0; i < 10; i++) {
+            float yes = i % 2 == 0 ? 1.0f : 0.0f;
+            result = labelSmoothing.processLatestResults(new float [] {0.0f, yes, 1.0f - yes}, i * 100);
+        }
+
+        assertEquals("yes", result.foundCommand);
+        assertEquals(0.5f, result.score, DELTA);
+    }
+
+    @Test
+    public void testExponential() {
+
+        LabelSmoothing labelSmoothing = new LabelSmoothing(
+                LABELS, 1000, 0.3f, 0, 0, LabelSmoothing.EXPONENTIAL, 0);
+
+        labelSmoothing.processLatestResults(new float [] {0.0f, 1.0f, 0.0f}, 0);
+        LabelSmoothing.RecognitionResult result = labelSmoothing
+                .processLatestResults(new float [] {0.0f, 0.0f, 1.0f}, 1000);
+
+        float alpha = (float) (1.0 - Math.exp(-1.0));
+        assertEquals("no", result.foundCommand);
+        assertEquals(alpha, result.score, DELTA);
+    }
+
+    @Test
+    public void testSuppression() {
+
+        LabelSmoothing labelSmoothing = new LabelSmoothing(LABELS, 0, 0.5f, 1000, 0);
+
+        LabelSmoothing.RecognitionResult first = labelSmoothing
+                .processLatestResults(new float [] {0.0f, 0.9f, 0.1f}, 0);
+        assertTrue(first.isNewCommand);
+
+        LabelSmoothing.RecognitionResult suppressed = labelSmoothing
+                .processLatestResults(new float [] {0.0f, 0.1f, 0.9f}, 500);
+        assertFalse(suppressed.isNewCommand);
+
+        LabelSmoothing.RecognitionResult later = labelSmoothing
+                .processLatestResults(new float [] {0.0f, 0.1f, 0.9f}, 1500);
+        assertTrue(later.isNewCommand);
+        assertEquals("no", later.foundCommand);
+    }
+}
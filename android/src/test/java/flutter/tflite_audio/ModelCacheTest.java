@@ -0,0 +1,110 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ModelCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+
+        ModelCache<MockModel> cache = new ModelCache<>(250);
+        MockModel first = new MockModel(100);
+        MockModel second = new MockModel(100);
+        MockModel third = new MockModel(100);
+
+        int firstHandle = cache.put("first", first);
+        int secondHandle = cache.put("second", second);
+        cache.get(firstHandle); //second is now the least recently used
+        int thirdHandle = cache.put("third", third);
+
+        assertTrue(second.isClosed);
+        assertNull(cache.get(secondHandle));
+        assertSame(first, cache.get(firstHandle));
+        assertSame(third, cache.get(thirdHandle));
+        assertEquals(200, cache.getTotalBytes());
+    }
+
+    @Test
+    public void testKeepsMostRecentOverBudget() {
+
+        ModelCache<MockModel> cache = new ModelCache<>(50);
+        MockModel small = new MockModel(10);
+        MockModel large = new MockModel(100);
+
+        cache.put("small", small);
+        int handle = cache.put("large", large);
+
+        assertTrue(small.isClosed);
+        assertFalse(large.isClosed);
+        assertSame(large, cache.get(handle));
+    }
+
+    @Test
+    public void testGrowingEntry_trimmedOnBudgetChange() {
+
+        ModelCache<MockModel> cache = new ModelCache<>(1000);
+        MockModel first = new MockModel(100);
+        MockModel second = new MockModel(100);
+        cache.put("first", first);
+        cache.put("second", second);
+
+        second.sizeBytes = 400; //e.g. more interpreters created
+        cache.setBudget(450);
+
+        assertTrue(first.isClosed);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSameKey_replacesEntry() {
+
+        ModelCache<MockModel> cache = new ModelCache<>(1000);
+        MockModel first = new MockModel(100);
+        MockModel reloaded = new MockModel(100);
+
+        int firstHandle = cache.put("model", first);
+        int reloadedHandle = cache.put("model", reloaded);
+
+        assertTrue(first.isClosed);
+        assertTrue(firstHandle != reloadedHandle);
+        assertEquals(reloadedHandle, cache.getHandle("model"));
+        assertEquals(0, cache.getHandle("missing"));
+    }
+
+    @Test
+    public void testClose() {
+
+        ModelCache<MockModel> cache = new ModelCache<>(1000);
+        MockModel model = new MockModel(100);
+        int handle = cache.put("model", model);
+
+        assertTrue(cache.close(handle));
+        assertFalse(cache.close(handle));
+        assertTrue(model.isClosed);
+        assertNull(cache.get(handle));
+    }
+
+    private static class MockModel implements ModelCache.Entry {
+        long sizeBytes;
+        boolean isClosed = false;
+
+        MockModel(long sizeBytes) {
+            this.sizeBytes = sizeBytes;
+        }
+
+        @Override
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+        }
+    }
+}
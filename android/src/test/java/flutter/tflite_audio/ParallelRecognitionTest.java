@@ -0,0 +1,74 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ParallelRecognitionTest {
+
+    private static final int AUDIO_LENGTH = 4;
+
+    @Test
+    public void testSilence_inWindowOrder() throws InterruptedException {
+
+        List<Long> silent = Collections.synchronizedList(new ArrayList<>());
+        List<Long> recognised = Collections.synchronizedList(new ArrayList<>());
+        ParallelRecognition parallelRecognition = create(3, 2, silent, recognised);
+
+        for (long window = 0; window < 6; window++) {
+            parallelRecognition.skipSilent(window);
+        }
+        finish(parallelRecognition);
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L), silent);
+        assertEquals(0, recognised.size());
+    }
+
+    @Test
+    public void testSilence_heldUntilEarlierWindowsComplete() throws InterruptedException {
+
+        //workers without a recognizer fail their windows, which then publish nothing
+        List<Long> silent = Collections.synchronizedList(new ArrayList<>());
+        List<Long> recognised = Collections.synchronizedList(new ArrayList<>());
+        ParallelRecognition parallelRecognition = create(2, 1, silent, recognised);
+
+        parallelRecognition.offer(new short [AUDIO_LENGTH], 0);
+        parallelRecognition.skipSilent(1);
+        parallelRecognition.offer(new short [AUDIO_LENGTH], 2);
+        parallelRecognition.skipSilent(3);
+        parallelRecognition.skipSilent(4);
+        finish(parallelRecognition);
+
+        assertEquals(List.of(1L, 3L, 4L), silent);
+        assertEquals(0, recognised.size());
+    }
+
+    private ParallelRecognition create(int numOfWorkers, int blockSize, List<Long> silent, List<Long> recognised) {
+        return new ParallelRecognition(numOfWorkers, blockSize, AUDIO_LENGTH,
+                () -> null,
+                recognizer -> { },
+                new ParallelRecognition.ResultHandler() {
+                    @Override
+                    public void onResult(long windowIndex, float [] scores, long inferenceTimeMs) {
+                        recognised.add(windowIndex);
+                    }
+
+                    @Override
+                    public void onSilence(long windowIndex) {
+                        silent.add(windowIndex);
+                    }
+                });
+    }
+
+    private void finish(ParallelRecognition parallelRecognition) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        parallelRecognition.finish(finished::countDown);
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -1,6 +1,7 @@
 package flutter.tflite_audio;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
 
@@ -110,6 +111,20 @@ public class RecordingTest {
         assertArrayEquals(convertToArray(result), expectedData);
     }
 
+    @Test
+    public void testMultiSplice_recyclesFrames() {
+
+        short [] recordingData = {1, 2, 3};
+        int audioLength = 4;
+        int numOfInferences = 6;
+        short [] expectedData = {1, 2, 3, 1, 2, 3, 1, 2, 3, 1, 2, 3, 1, 2, 3, 1, 2, 3, 1, 2, 3, 1, 2, 3};
+        FramePool<short []> framePool = FramePool.ofShorts(audioLength, 2);
+
+        List<Short> result = mockRecording(recordingData, audioLength, numOfInferences, framePool);
+        assertArrayEquals(convertToArray(result), expectedData);
+        assertEquals(2, framePool.getAllocations());
+    }
+
     //https://stackoverflow.com/questions/60072435/how-to-convert-short-into-listshort-in-java-with-streams
     public List<Short> convertToList(short [] shortArray){
         return IntStream.range(0, shortArray.length)
@@ -129,11 +144,18 @@ public class RecordingTest {
     }
 
     public List<Short> mockRecording(short [] shortBuffer, int audioLength, int numOfInferences){
+        return mockRecording(shortBuffer, audioLength, numOfInferences, null);
+    }
+
+    //Frames are released back to [framePool] once copied, mimicking the plugin after inference.
+    public List<Short> mockRecording(short [] shortBuffer, int audioLength, int numOfInferences, FramePool<short []> framePool){
 
         boolean isRecording = true;
         List <Short> result = new ArrayList<>();
 
-        RecordingData recordingData = new RecordingData(audioLength, shortBuffer.length ,numOfInferences);
+        RecordingData recordingData = framePool == null
+                ? new RecordingData(audioLength, shortBuffer.length ,numOfInferences)
+                : new RecordingData(audioLength, shortBuffer.length ,numOfInferences, framePool);
 
         while (isRecording) {
 
@@ -151,6 +173,7 @@ public class RecordingTest {
                             .emit(data -> {
                                 System.out.println(Arrays.toString(data));
                                 result.addAll(convertToList(data));
+                                if (framePool != null) framePool.release(data);
                             })
                             .updateInferenceCount()
                             .clear();
@@ -164,6 +187,7 @@ public class RecordingTest {
                             .emit(data -> {
                                 System.out.println(Arrays.toString(data));
                                 result.addAll(convertToList(data));
+                                if (framePool != null) framePool.release(data);
                             });
                     isRecording = false;
                     break;
@@ -176,6 +200,7 @@ public class RecordingTest {
                             .emit(data -> {
                                 System.out.println(Arrays.toString(data));
                                 result.addAll(convertToList(data));
+                                if (framePool != null) framePool.release(data);
                             })
                             .updateInferenceCount()
                             .clear()
@@ -191,6 +216,7 @@ public class RecordingTest {
                             .emit(data -> {
                                 System.out.println(Arrays.toString(data));
                                 result.addAll(convertToList(data));
+                                if (framePool != null) framePool.release(data);
                             });
                     isRecording = false;
                     break;
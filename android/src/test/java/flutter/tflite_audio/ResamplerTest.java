@@ -0,0 +1,131 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ShortBuffer;
+
+public class ResamplerTest {
+
+    @Test
+    public void testDownsample_preservesTone() {
+
+        short [] tone = sine(1000, 48000, 4800);
+        short [] result = resample(tone, 48000, 16000, tone.length);
+
+        assertEquals(1600, result.length);
+        assertTone(result, 1000, 16000);
+    }
+
+    @Test
+    public void testDownsample_fractionalRatio() {
+
+        short [] tone = sine(440, 44100, 4410);
+        short [] result = resample(tone, 44100, 16000, tone.length);
+
+        assertEquals(1600, result.length);
+        assertTone(result, 440, 16000);
+    }
+
+    @Test
+    public void testUpsample_preservesTone() {
+
+        short [] tone = sine(1000, 8000, 800);
+        short [] result = resample(tone, 8000, 16000, tone.length);
+
+        assertEquals(1600, result.length);
+        assertTone(result, 1000, 16000);
+    }
+
+    @Test
+    public void testDownsample_removesAliasing() {
+
+        //above the output Nyquist frequency, would fold back to 4kHz
+        short [] tone = sine(12000, 48000, 4800);
+        short [] result = resample(tone, 48000, 16000, tone.length);
+
+        assertTrue(rms(result, 100, result.length - 100) < 100);
+    }
+
+    @Test
+    public void testChunked_matchesSingleCall() {
+
+        short [] tone = sine(700, 44100, 10000);
+        short [] expected = resample(tone, 44100, 16000, tone.length);
+        short [] result = resample(tone, 44100, 16000, 333);
+
+        assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void testPassthrough() {
+
+        short [] audioData = {1, 2, 3, 4, 5};
+        short [] result = resample(audioData, 16000, 16000, 2);
+
+        assertArrayEquals(audioData, result);
+    }
+
+    @Test
+    public void testStreamingFile_resamplesToModelRate() {
+
+        short [] tone = sine(1000, 48000, 9600);
+        ShortBuffer result = ShortBuffer.allocate(3200);
+
+        AudioFile audioFile = new AudioFile(1600, 1600);
+        audioFile.getObservable().subscribe(result::put);
+        audioFile.setSampleRate(48000, 16000);
+        audioFile.write(ShortBuffer.wrap(tone));
+        audioFile.finish();
+
+        assertEquals(3200, result.position());
+        assertTone(result.array(), 1000, 16000);
+    }
+
+    private short [] resample(short [] audioData, int inputRate, int outputRate, int chunkSize) {
+        Resampler resampler = new Resampler(inputRate, outputRate);
+        ShortBuffer result = ShortBuffer.allocate(audioData.length * outputRate / inputRate + 2);
+        Resampler.Output output = (data, offset, length) -> result.put(data, offset, length);
+
+        for (int offset = 0; offset < audioData.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, audioData.length - offset);
+            resampler.process(audioData, offset, length, output);
+        }
+        resampler.flush(output);
+
+        short [] samples = new short [result.position()];
+        result.flip();
+        result.get(samples);
+        return samples;
+    }
+
+    private short [] sine(double frequency, int sampleRate, int length) {
+        short [] audioData = new short [length];
+        for (int i = 0; i < length; i++) {
+            audioData[i] = (short) Math.round(10000 * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return audioData;
+    }
+
+    //compares against an ideal sine away from the edges, where the filter sees silence
+    private void assertTone(short [] audioData, double frequency, int sampleRate) {
+        short [] expected = sine(frequency, sampleRate, audioData.length);
+        double error = 0;
+        int count = 0;
+        for (int i = 100; i < audioData.length - 100; i++) {
+            error += Math.abs(audioData[i] - expected[i]);
+            count += 1;
+        }
+        assertTrue("Mean error: " + error / count, error / count < 100);
+    }
+
+    private double rms(short [] audioData, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += audioData[i] * (double) audioData[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+}
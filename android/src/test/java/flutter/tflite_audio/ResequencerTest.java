@@ -0,0 +1,73 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ResequencerTest {
+
+    @Test
+    public void testOutOfOrder() {
+
+        List<Long> result = new ArrayList<>();
+        Resequencer<String> resequencer = new Resequencer<>((sequence, item) -> result.add(sequence));
+
+        resequencer.complete(2, "c");
+        resequencer.complete(1, "b");
+        assertEquals(0, result.size());
+        assertEquals(2, resequencer.getPendingCount());
+
+        resequencer.complete(0, "a");
+        assertEquals(List.of(0L, 1L, 2L), result);
+        assertEquals(0, resequencer.getPendingCount());
+    }
+
+    @Test
+    public void testSkipped() {
+
+        List<Long> result = new ArrayList<>();
+        Resequencer<String> resequencer = new Resequencer<>((sequence, item) -> result.add(sequence));
+
+        resequencer.complete(1, null);
+        resequencer.complete(2, "c");
+        resequencer.complete(0, "a");
+
+        assertEquals(List.of(0L, 2L), result);
+        assertEquals(3, resequencer.getNextSequence());
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+
+        int count = 2000;
+        int numOfThreads = 4;
+        List<Long> result = new ArrayList<>();
+        Resequencer<Long> resequencer = new Resequencer<>((sequence, item) -> result.add(item));
+
+        List<Long> sequences = new ArrayList<>();
+        for (long i = 0; i < count; i++) sequences.add(i);
+        Collections.shuffle(sequences, new Random(3));
+
+        Thread [] threads = new Thread [numOfThreads];
+        for (int t = 0; t < numOfThreads; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                for (int i = first; i < count; i += numOfThreads) {
+                    long sequence = sequences.get(i);
+                    resequencer.complete(sequence, sequence);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(count, result.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (long) result.get(i));
+        }
+    }
+}
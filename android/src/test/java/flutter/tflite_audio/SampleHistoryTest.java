@@ -0,0 +1,64 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SampleHistoryTest {
+
+    @Test
+    public void testReadAcrossWrap() {
+
+        SampleHistory history = new SampleHistory(8);
+        history.write(count(0, 6), 0, 6);
+        history.write(count(6, 6), 0, 6);
+
+        short [] dst = new short [8];
+        assertTrue(history.read(4, dst));
+        assertArrayEquals(count(4, 8), dst);
+        assertEquals(12, history.getWrittenCount());
+    }
+
+    @Test
+    public void testOverwrittenOrFuture() {
+
+        SampleHistory history = new SampleHistory(8);
+        history.write(count(0, 12), 0, 12);
+
+        assertFalse(history.read(3, new short [4])); //overwritten
+        assertFalse(history.read(10, new short [4])); //not written yet
+        assertTrue(history.read(4, new short [4]));
+    }
+
+    @Test
+    public void testBeforeStart_zeros() {
+
+        SampleHistory history = new SampleHistory(8);
+        history.write(count(1, 4), 0, 4);
+
+        short [] dst = new short [6];
+        assertTrue(history.read(-2, dst));
+        assertArrayEquals(new short [] {0, 0, 1, 2, 3, 4}, dst);
+    }
+
+    @Test
+    public void testWriteLongerThanCapacity() {
+
+        SampleHistory history = new SampleHistory(4);
+        history.write(count(0, 10), 0, 10);
+
+        short [] dst = new short [4];
+        assertTrue(history.read(6, dst));
+        assertArrayEquals(count(6, 4), dst);
+    }
+
+    private static short [] count(int from, int length) {
+        short [] samples = new short [length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (from + i);
+        }
+        return samples;
+    }
+}
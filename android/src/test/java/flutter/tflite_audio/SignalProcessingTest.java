@@ -0,0 +1,193 @@
+package flutter.tflite_audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.jlibrosa.audio.JLibrosa;
+import com.jlibrosa.audio.process.AudioFeatureExtraction;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class SignalProcessingTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void testRealFFT_matchesDFT() {
+
+        int n = 64;
+        float [] signal = mockSignal(n, 1);
+        float [] re = new float [n / 2 + 1];
+        float [] im = new float [n / 2 + 1];
+
+        new RealFFT(n).forward(signal, re, im);
+
+        for (int k = 0; k <= n / 2; k++) {
+            double expectedRe = 0;
+            double expectedIm = 0;
+            for (int t = 0; t < n; t++) {
+                expectedRe += signal[t] * Math.cos(2 * Math.PI * k * t / n);
+                expectedIm -= signal[t] * Math.sin(2 * Math.PI * k * t / n);
+            }
+            assertEquals(expectedRe, re[k], 1e-4);
+            assertEquals(expectedIm, im[k], 1e-4);
+        }
+    }
+
+    @Test
+    public void testSpectrogram_matchesJLibrosa() {
+
+        int nFFT = 256;
+        int hopLength = 128;
+        float [] signal = mockSignal(SAMPLE_RATE, 2);
+
+        AudioFeatureExtraction featureExtractor = new AudioFeatureExtraction();
+        featureExtractor.setSampleRate(SAMPLE_RATE);
+        featureExtractor.setN_fft(nFFT);
+        featureExtractor.setHop_length(hopLength);
+        Complex [][] expected = featureExtractor.extractSTFTFeaturesAsComplexValues(signal, true);
+
+        SignalProcessing signalProcessing = new SignalProcessing(SAMPLE_RATE, 20, nFFT, 128, hopLength);
+        float [][] result = signalProcessing.getSpectrogram(signal);
+
+        assertEquals(expected.length, result.length);
+        assertEquals(expected[0].length, result[0].length);
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[0].length; j++) {
+                double value = expected[i][j].abs();
+                assertEquals(value, result[i][j], 1e-4 * Math.max(1, value));
+            }
+        }
+    }
+
+    @Test
+    public void testMelSpectrogram_matchesJLibrosa() {
+
+        int nFFT = 512;
+        int nMels = 40;
+        int hopLength = 160;
+        float [] signal = mockSignal(SAMPLE_RATE, 3);
+
+        float [][] expected = new JLibrosa().generateMelSpectroGram(signal, SAMPLE_RATE, nFFT, nMels, hopLength);
+        float [][] result = new SignalProcessing(SAMPLE_RATE, 20, nFFT, nMels, hopLength).getMelSpectrogram(signal);
+
+        assertClose(expected, result, 1e-3);
+    }
+
+    @Test
+    public void testMFCC_matchesJLibrosa() {
+
+        int nMFCC = 13;
+        int nMels = 40;
+        int hopLength = 512;
+        float [] signal = mockSignal(SAMPLE_RATE, 4);
+
+        float [][] expected = new JLibrosa().generateMFCCFeatures(signal, SAMPLE_RATE, nMFCC, 256, nMels, hopLength);
+        float [][] result = new SignalProcessing(SAMPLE_RATE, nMFCC, 256, nMels, hopLength).getMFCC(signal);
+
+        assertClose(expected, result, 1e-3);
+    }
+
+    @Test
+    public void testFeaturePlan_sharedBetweenInstances() {
+
+        FeaturePlan plan = new FeaturePlan(SAMPLE_RATE, 13, 512, 40, 160);
+        float [] signal = mockSignal(SAMPLE_RATE, 5);
+
+        float [][] first = copy(new SignalProcessing(plan).getMelSpectrogram(signal));
+        float [][] second = new SignalProcessing(plan).getMelSpectrogram(signal);
+
+        assertClose(first, second, 0);
+    }
+
+    @Test
+    public void testStreaming_reusesInteriorFrames() {
+
+        int audioLength = SAMPLE_RATE;
+        int audioStride = SAMPLE_RATE / 10;
+        int hopLength = 160;
+        float [] stream = mockSignal(audioLength + audioStride * 5, 6);
+        FeaturePlan plan = new FeaturePlan(SAMPLE_RATE, 13, 512, 40, hopLength);
+        SignalProcessing streaming = new SignalProcessing(plan);
+
+        for (int windowIndex = 0; windowIndex <= 5; windowIndex++) {
+            int windowStart = windowIndex * audioStride;
+            float [] window = Arrays.copyOfRange(stream, windowStart, windowStart + audioLength);
+
+            float [][] expectedMel = new SignalProcessing(plan).getMelSpectrogram(window);
+            float [][] expectedMfcc = new SignalProcessing(plan).getMFCC(window);
+
+            assertClose(expectedMel, streaming.getMelSpectrogram(window, windowStart), 0);
+            assertClose(expectedMfcc, streaming.getMFCC(window, windowStart), 0);
+        }
+
+        //after the first window, only new samples and the padded edges are computed
+        assertTrue(streaming.getReusedFrames() > 2 * streaming.getComputedFrames());
+    }
+
+    @Test
+    public void testStreaming_resetForNewFile() {
+
+        FeaturePlan plan = new FeaturePlan(SAMPLE_RATE, 13, 512, 40, 160);
+        float [] firstFile = mockSignal(SAMPLE_RATE, 7);
+        float [] secondFile = mockSignal(SAMPLE_RATE, 8);
+        SignalProcessing streaming = new SignalProcessing(plan);
+
+        streaming.getMelSpectrogram(firstFile, 0);
+        streaming.resetStream();
+        float [][] expected = new SignalProcessing(plan).getMelSpectrogram(secondFile);
+
+        assertClose(expected, streaming.getMelSpectrogram(secondFile, 0), 0);
+    }
+
+    @Test
+    public void testReshapeAndTranspose_nonSquare() {
+
+        //3 frames of 2 bins, so swapped dimensions would not fit
+        float [][] spectrogram = {{1, 2}, {3, 4}, {5, 6}};
+        float [][][][] result = new SignalProcessing(SAMPLE_RATE, 20, 256, 2, 128).reshapeTo4DAndTranspose(spectrogram);
+
+        assertEquals(1, result.length);
+        assertEquals(2, result[0].length);
+        assertEquals(3, result[0][0].length);
+        assertEquals(1, result[0][0][0].length);
+        for (int frame = 0; frame < 3; frame++) {
+            for (int bin = 0; bin < 2; bin++) {
+                assertEquals(spectrogram[frame][bin], result[0][bin][frame][0], 0);
+            }
+        }
+    }
+
+    private void assertClose(float [][] expected, float [][] result, double relativeDelta) {
+        assertEquals(expected.length, result.length);
+        assertEquals(expected[0].length, result[0].length);
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[0].length; j++) {
+                assertEquals(expected[i][j], result[i][j], relativeDelta * Math.max(1, Math.abs(expected[i][j])));
+            }
+        }
+    }
+
+    private float [][] copy(float [][] features) {
+        float [][] result = new float [features.length][];
+        for (int i = 0; i < features.length; i++) {
+            result[i] = features[i].clone();
+        }
+        return result;
+    }
+
+    //sine sweep with a little noise, normalised like recorded audio
+    private float [] mockSignal(int length, long seed) {
+        Random random = new Random(seed);
+        float [] signal = new float [length];
+        for (int i = 0; i < length; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            signal[i] = (float) (0.5 * Math.sin(2 * Math.PI * (200 + 1000 * t) * t) + 0.05 * random.nextGaussian());
+        }
+        return signal;
+    }
+}
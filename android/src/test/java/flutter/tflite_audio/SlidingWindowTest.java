@@ -0,0 +1,136 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SlidingWindowTest {
+
+    @Test
+    public void testNoOverlap() {
+
+        short [] audioData = {1, 2, 3, 4, 5, 6, 7, 8};
+        int audioLength = 4;
+        int audioStride = 4;
+        short [][] expectedData = {{1, 2, 3, 4}, {5, 6, 7, 8}};
+
+        List<short []> result = slide(audioData, audioLength, audioStride, 3);
+        assertWindows(expectedData, result);
+    }
+
+    @Test
+    public void testOverlap() {
+
+        short [] audioData = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        int audioLength = 4;
+        int audioStride = 2;
+        short [][] expectedData = {{1, 2, 3, 4}, {3, 4, 5, 6}, {5, 6, 7, 8}, {7, 8, 9, 10}};
+
+        List<short []> result = slide(audioData, audioLength, audioStride, 3);
+        assertWindows(expectedData, result);
+    }
+
+    @Test
+    public void testOverlap_largeChunks() {
+
+        short [] audioData = {1, 2, 3, 4, 5, 6, 7};
+        int audioLength = 4;
+        int audioStride = 1;
+        short [][] expectedData = {{1, 2, 3, 4}, {2, 3, 4, 5}, {3, 4, 5, 6}, {4, 5, 6, 7}};
+
+        List<short []> result = slide(audioData, audioLength, audioStride, audioData.length);
+        assertWindows(expectedData, result);
+    }
+
+    @Test
+    public void testGap() {
+
+        short [] audioData = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        int audioLength = 2;
+        int audioStride = 4;
+        short [][] expectedData = {{1, 2}, {5, 6}, {9, 10}};
+
+        List<short []> result = slide(audioData, audioLength, audioStride, 7);
+        assertWindows(expectedData, result);
+    }
+
+    @Test
+    public void testFlush_withPadding() {
+
+        short [] audioData = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        int audioLength = 4;
+        int audioStride = 3;
+        short [] expectedFinalNoPad = {7, 8, 9};
+
+        List<short []> result = slide(audioData, audioLength, audioStride, 2);
+        short [] finalWindow = result.get(result.size() - 1);
+
+        assertEquals(3, result.size());
+        assertEquals(audioLength, finalWindow.length);
+        assertArrayEquals(expectedFinalNoPad, Arrays.copyOfRange(finalWindow, 0, 3));
+    }
+
+    @Test
+    public void testFlush_fewNewSamples_noPad() {
+
+        //the padded window would only add one sample to audio that was already emitted
+        short [] audioData = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+        int audioLength = 8;
+        int audioStride = 2;
+        short [][] expectedData = {{1, 2, 3, 4, 5, 6, 7, 8}, {3, 4, 5, 6, 7, 8, 9, 10}};
+
+        List<short []> result = slide(audioData, audioLength, audioStride, 3);
+        assertWindows(expectedData, result);
+    }
+
+    @Test
+    public void testFlush_lackData_noPad() {
+
+        short [] audioData = {1};
+        int audioLength = 4;
+        int audioStride = 2;
+
+        List<short []> result = slide(audioData, audioLength, audioStride, 1);
+        assertEquals(0, result.size());
+    }
+
+    @Test
+    public void testRecyclesFrames() {
+
+        short [] audioData = new short [1000];
+        FramePool<short []> framePool = FramePool.ofShorts(10, 1);
+        SlidingWindow slidingWindow = new SlidingWindow(10, 3, framePool);
+
+        slidingWindow.write(audioData, 0, audioData.length, framePool::release);
+        assertEquals(331, slidingWindow.getWindowCount());
+        assertEquals(1, framePool.getAllocations());
+    }
+
+    public void assertWindows(short [][] expectedData, List<short []> result) {
+        assertEquals(expectedData.length, result.size());
+        for (int i = 0; i < expectedData.length; i++) {
+            assertArrayEquals(expectedData[i], result.get(i));
+        }
+    }
+
+    //Writes [audioData] in chunks of [chunkSize], as a recording or decoder would.
+    public List<short []> slide(short [] audioData, int audioLength, int audioStride, int chunkSize) {
+
+        List<short []> result = new ArrayList<>();
+        SlidingWindow slidingWindow = new SlidingWindow(audioLength, audioStride, FramePool.ofShorts(audioLength, 0));
+
+        for (int offset = 0; offset < audioData.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, audioData.length - offset);
+            slidingWindow.write(audioData, offset, length, data -> {
+                System.out.println(Arrays.toString(data));
+                result.add(data);
+            });
+        }
+        slidingWindow.flush(result::add);
+        return result;
+    }
+}
@@ -0,0 +1,108 @@
+package flutter.tflite_audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+public class WavFileTest {
+
+    @Test
+    public void testParse() {
+
+        short [] audioData = {1, -2, 3, 4, 32767, -32768};
+        WavFile wavFile = WavFile.parse(mockWav(audioData, 1, 16, 16000, false));
+
+        assertEquals(16000, wavFile.getSampleRate());
+        assertEquals(1, wavFile.getChannelCount());
+        assertArrayEquals(audioData, toArray(wavFile.getSamples()));
+    }
+
+    @Test
+    public void testParse_skipsOtherChunks() {
+
+        short [] audioData = {5, 6, 7};
+        WavFile wavFile = WavFile.parse(mockWav(audioData, 2, 16, 44100, true));
+
+        assertEquals(44100, wavFile.getSampleRate());
+        assertEquals(2, wavFile.getChannelCount());
+        assertArrayEquals(audioData, toArray(wavFile.getSamples()));
+    }
+
+    @Test
+    public void testMap_withOffset() throws IOException {
+
+        short [] audioData = {9, 8, 7, 6};
+        ByteBuffer wav = mockWav(audioData, 1, 16, 8000, false);
+        int offset = 100; //like an asset inside an apk
+
+        File file = File.createTempFile("wav_file_test", ".wav");
+        file.deleteOnExit();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(new byte [offset]);
+            outputStream.write(wav.array(), 0, wav.limit());
+        }
+
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            WavFile wavFile = WavFile.map(inputStream.getChannel(), offset, wav.limit(), true, 16000);
+            assertEquals(8000, wavFile.getSampleRate());
+            assertArrayEquals(audioData, toArray(wavFile.getSamples()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_unsupportedFormat() {
+        WavFile.parse(mockWav(new short [] {1, 2}, 1, 24, 16000, false));
+    }
+
+    @Test
+    public void testSplice_fromWav() {
+
+        short [] audioData = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        WavFile wavFile = WavFile.parse(mockWav(audioData, 1, 16, 16000, false));
+
+        ShortBuffer result = ShortBuffer.allocate(audioData.length);
+        AudioFile audioFile = new AudioFile(wavFile.getSamples(), 5, 5);
+        audioFile.getObservable().subscribe(result::put);
+        audioFile.splice();
+
+        assertArrayEquals(audioData, result.array());
+    }
+
+    private ByteBuffer mockWav(short [] samples, int channels, int bitsPerSample, int sampleRate, boolean withListChunk) {
+        int listSize = withListChunk ? 8 + 3 + 1 : 0; //odd sized chunk with its pad byte
+        ByteBuffer wav = ByteBuffer.allocate(44 + listSize + samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+
+        wav.put("RIFF".getBytes()).putInt(wav.capacity() - 8).put("WAVE".getBytes());
+        wav.put("fmt ".getBytes()).putInt(16)
+                .putShort((short) 1)
+                .putShort((short) channels)
+                .putInt(sampleRate)
+                .putInt(sampleRate * channels * bitsPerSample / 8)
+                .putShort((short) (channels * bitsPerSample / 8))
+                .putShort((short) bitsPerSample);
+        if (withListChunk) {
+            wav.put("LIST".getBytes()).putInt(3).put(new byte [] {1, 2, 3, 0});
+        }
+        wav.put("data".getBytes()).putInt(samples.length * 2);
+        for (short sample : samples) {
+            wav.putShort(sample);
+        }
+        wav.flip();
+        return wav;
+    }
+
+    private short [] toArray(ShortBuffer buffer) {
+        short [] result = new short [buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WindowBatcherTest {
+
+    @Test
+    public void testSplitsScoresInWindowOrder() {
+
+        MockBatch batch = new MockBatch(3, 2);
+        List<float []> results = new ArrayList<>();
+        List<Long> indices = new ArrayList<>();
+        WindowBatcher batcher = new WindowBatcher(batch, (windowIndex, scores, inferenceTimeMs) -> {
+            indices.add(windowIndex);
+            results.add(scores);
+        });
+
+        for (long window = 0; window < 4; window++) {
+            batcher.add(new short [1], window);
+        }
+        batcher.flush(); //partial batch
+
+        assertEquals(2, batch.runs);
+        assertArrayEquals(new Object [] {0L, 1L, 2L, 3L}, indices.toArray());
+        assertArrayEquals(new float [] {2, 3}, results.get(1), 0);
+        assertArrayEquals(new float [] {0, 1}, results.get(3), 0);
+    }
+
+    @Test
+    public void testCancelledRun_dropsRemainingWindows() {
+
+        MockBatch batch = new MockBatch(2, 1);
+        List<Long> indices = new ArrayList<>();
+        WindowBatcher batcher = new WindowBatcher(batch, (windowIndex, scores, inferenceTimeMs) -> indices.add(windowIndex));
+
+        batcher.add(new short [1], 0);
+        batcher.add(new short [1], 1);
+        batch.isCancelled = true;
+        batcher.add(new short [1], 2);
+        batcher.add(new short [1], 3);
+        assertTrue(batcher.isCancelled());
+
+        //no more feature extraction or runs once cancelled
+        batcher.add(new short [1], 4);
+        batcher.flush();
+        assertEquals(4, batch.extractions);
+        assertEquals(2, batch.runs);
+        assertArrayEquals(new Object [] {0L, 1L}, indices.toArray());
+    }
+
+    @Test
+    public void testFlush_empty_noRun() {
+
+        MockBatch batch = new MockBatch(2, 1);
+        WindowBatcher batcher = new WindowBatcher(batch, (windowIndex, scores, inferenceTimeMs) -> { });
+
+        batcher.flush();
+        assertEquals(0, batch.runs);
+        assertFalse(batcher.isCancelled());
+    }
+
+    //Scores count up from 0 across every slot, like a runner whose scores are its slot order.
+    private static class MockBatch implements WindowBatcher.Batch {
+
+        private final int batchSize;
+        private final int scoresPerWindow;
+        boolean isCancelled = false;
+        int extractions = 0;
+        int runs = 0;
+
+        MockBatch(int batchSize, int scoresPerWindow) {
+            this.batchSize = batchSize;
+            this.scoresPerWindow = scoresPerWindow;
+        }
+
+        @Override
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        @Override
+        public int getScoresPerWindow() {
+            return scoresPerWindow;
+        }
+
+        @Override
+        public boolean extractFeatures(short [] window, long windowIndex, int slot) {
+            extractions += 1;
+            return true;
+        }
+
+        @Override
+        public float [] run() {
+            runs += 1;
+            if (isCancelled) return null;
+            float [] scores = new float [batchSize * scoresPerWindow];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = i;
+            }
+            return scores;
+        }
+    }
+}
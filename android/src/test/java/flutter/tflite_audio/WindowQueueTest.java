@@ -0,0 +1,73 @@
+package flutter.tflite_audio;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WindowQueueTest {
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+
+        List<Integer> dropped = new ArrayList<>();
+        WindowQueue<Integer> windowQueue = new WindowQueue<>(2, WindowQueue.DROP_OLDEST, dropped::add);
+
+        for (int i = 0; i < 5; i++) {
+            windowQueue.offer(i);
+        }
+        windowQueue.close();
+
+        assertEquals(3, windowQueue.getDroppedCount());
+        assertEquals(2, windowQueue.getQueuedCount());
+        assertEquals(Integer.valueOf(3), windowQueue.take());
+        assertEquals(3, windowQueue.getTakenSequence());
+        assertEquals(Integer.valueOf(4), windowQueue.take());
+        assertEquals(4, windowQueue.getTakenSequence());
+        assertNull(windowQueue.take());
+        assertEquals(List.of(0, 1, 2), dropped);
+    }
+
+    @Test
+    public void testKeepLatest() throws InterruptedException {
+
+        WindowQueue<Integer> windowQueue = new WindowQueue<>(4, WindowQueue.KEEP_LATEST, null);
+
+        for (int i = 0; i < 5; i++) {
+            windowQueue.offer(i);
+        }
+        windowQueue.close();
+
+        assertEquals(4, windowQueue.getDroppedCount());
+        assertEquals(Integer.valueOf(4), windowQueue.take());
+        assertNull(windowQueue.take());
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+
+        int numOfWindows = 100;
+        WindowQueue<Integer> windowQueue = new WindowQueue<>(1, WindowQueue.BLOCK, null);
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < numOfWindows; i++) {
+                windowQueue.offer(i);
+            }
+            windowQueue.close();
+        });
+        producer.start();
+
+        List<Integer> result = new ArrayList<>();
+        Integer window;
+        while ((window = windowQueue.take()) != null) {
+            result.add(window);
+        }
+        producer.join();
+
+        assertEquals(numOfWindows, result.size());
+        assertEquals(Integer.valueOf(numOfWindows - 1), result.get(numOfWindows - 1));
+        assertEquals(0, windowQueue.getDroppedCount());
+    }
+}
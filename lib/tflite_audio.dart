@@ -12,28 +12,65 @@ class TfliteAudio {
       EventChannel('FileRecognitionStream');
 
   /// [startAudioRecognition] returns map objects with the following values:
-  /// String recognitionResult, int inferenceTime, bool hasPermission
+  /// String recognitionResult, int inferenceTime, bool hasPermission,
+  /// int droppedWindows, int queuedWindows
+  /// Set [audioStride] below [audioLength] to recognise overlapping windows.
+  /// [captureSampleRate] records at another rate and resamples to [sampleRate].
+  /// 0 uses [sampleRate], -1 uses the device's native rate. Android only.
+  /// [modelHandle] picks a model returned by [loadModel]. 0 uses the last one.
+  /// [activityThreshold] above 0 skips windows whose energy stays within that
+  /// many dB of the background noise. [silenceMode] 'report' publishes them as
+  /// '_silence_' instead. Results then include int silentWindows. Android only.
+  /// [cascadeModelHandle] runs a second, heavier model from [loadModel] only
+  /// when the first model's score reaches [cascadeThreshold] (on
+  /// [cascadeLabel], or any label). It sees the window plus [cascadeLookback]
+  /// earlier samples, so it must take rawAudio or decodedWav input. Results
+  /// then include int stage (1 or 2) and int cascadeTriggers. Android only.
   /// Do not change the parameter 'method'
   static Stream<Map<dynamic, dynamic>> startAudioRecognition(
       {required int sampleRate,
       required int bufferSize,
       int audioLength = 0,
+      int audioStride = 0,
       double detectionThreshold = 0.3,
       int numOfInferences = 1,
       int averageWindowDuration = 0,
       int minimumTimeBetweenSamples = 0,
       int suppressionTime = 0,
+      String smoothingMode = 'movingAverage',
+      String backpressure = 'dropOldest',
+      int queueSize = 2,
+      int captureSampleRate = 0,
+      double activityThreshold = 0,
+      String silenceMode = 'skip',
+      int cascadeModelHandle = 0,
+      double cascadeThreshold = 0.5,
+      String? cascadeLabel,
+      int cascadeLookback = 0,
+      int modelHandle = 0,
       String method = 'setAudioRecognitionStream'}) {
     final audioRecognitionStream =
         audioRecongitionChannel.receiveBroadcastStream(<String, dynamic>{
       'sampleRate': sampleRate,
       'bufferSize': bufferSize,
       'audioLength': audioLength,
+      'audioStride': audioStride,
       'numOfInferences': numOfInferences,
       'averageWindowDuration': averageWindowDuration,
       'detectionThreshold': detectionThreshold,
       'minimumTimeBetweenSamples': minimumTimeBetweenSamples,
       'suppressionTime': suppressionTime,
+      'smoothingMode': smoothingMode,
+      'backpressure': backpressure,
+      'queueSize': queueSize,
+      'captureSampleRate': captureSampleRate,
+      'activityThreshold': activityThreshold,
+      'silenceMode': silenceMode,
+      'cascadeModelHandle': cascadeModelHandle,
+      'cascadeThreshold': cascadeThreshold,
+      'cascadeLabel': cascadeLabel,
+      'cascadeLookback': cascadeLookback,
+      'modelHandle': modelHandle,
       'method': method
     });
 
@@ -44,24 +81,47 @@ class TfliteAudio {
   }
 
   ///Load stored audio file, preprocess and then fed into model.
+  ///[numOfWorkers] above 1 recognises windows in parallel (0 uses one worker
+  ///per core). Results still arrive in window order. Each worker's interpreter
+  ///runs with the model's numThreads, so keep it at 1 when using several
+  ///workers. Android only.
+  ///[batchSize] above 1 recognises that many consecutive windows with one
+  ///inference, for models with a batch dimension. It takes precedence over
+  ///[numOfWorkers]. Android only.
+  ///[activityThreshold] and [silenceMode] work as in [startAudioRecognition],
+  ///except that leading and trailing silence is never reported. Android only.
   static Stream<Map<dynamic, dynamic>> startFileRecognition(
       {required String audioDirectory,
       required int sampleRate,
       int audioLength = 0,
+      int audioStride = 0,
+      int numOfWorkers = 1,
+      int batchSize = 1,
+      double activityThreshold = 0,
+      String silenceMode = 'skip',
       double detectionThreshold = 0.3,
       int averageWindowDuration = 0,
       int minimumTimeBetweenSamples = 0,
       int suppressionTime = 0,
+      String smoothingMode = 'movingAverage',
+      int modelHandle = 0,
       final String method = 'setFileRecognitionStream'}) {
     final fileRecognitionStream =
         fileRecognitionChannel.receiveBroadcastStream(<String, dynamic>{
       'audioDirectory': audioDirectory,
       'sampleRate': sampleRate,
       'audioLength': audioLength,
+      'audioStride': audioStride,
+      'numOfWorkers': numOfWorkers,
+      'batchSize': batchSize,
+      'activityThreshold': activityThreshold,
+      'silenceMode': silenceMode,
       'averageWindowDuration': averageWindowDuration,
       'detectionThreshold': detectionThreshold,
       'minimumTimeBetweenSamples': minimumTimeBetweenSamples,
       'suppressionTime': suppressionTime,
+      'smoothingMode': smoothingMode,
+      'modelHandle': modelHandle,
       'method': method
     });
 
@@ -71,6 +131,46 @@ class TfliteAudio {
         .map((event) => Map<dynamic, dynamic>.from(event));
   }
 
+  ///Recognise several stored audio files on a pool of workers. Android only.
+  ///Directories in [audioFiles] are expanded to the files they contain.
+  ///Results are tagged with int fileId, String filePath and int windowOffset.
+  ///[numOfWorkers] defaults to 0, which uses one worker per core. Each worker
+  ///runs with the model's numThreads, so keep it at 1 when using several workers.
+  static Stream<Map<dynamic, dynamic>> recogniseFiles(
+      {required List<String> audioFiles,
+      required int sampleRate,
+      int audioLength = 0,
+      int audioStride = 0,
+      int numOfWorkers = 0,
+      double detectionThreshold = 0.3,
+      int averageWindowDuration = 0,
+      int minimumTimeBetweenSamples = 0,
+      int suppressionTime = 0,
+      String smoothingMode = 'movingAverage',
+      int modelHandle = 0,
+      final String method = 'setBatchRecognitionStream'}) {
+    final batchRecognitionStream =
+        fileRecognitionChannel.receiveBroadcastStream(<String, dynamic>{
+      'audioFiles': audioFiles,
+      'sampleRate': sampleRate,
+      'audioLength': audioLength,
+      'audioStride': audioStride,
+      'numOfWorkers': numOfWorkers,
+      'averageWindowDuration': averageWindowDuration,
+      'detectionThreshold': detectionThreshold,
+      'minimumTimeBetweenSamples': minimumTimeBetweenSamples,
+      'suppressionTime': suppressionTime,
+      'smoothingMode': smoothingMode,
+      'modelHandle': modelHandle,
+      'method': method
+    });
+
+    ///cast the result of the stream a map object.
+    return batchRecognitionStream
+        .cast<Map<dynamic, dynamic>>()
+        .map((event) => Map<dynamic, dynamic>.from(event));
+  }
+
   ///call [stopAudioRecognition] to forcibly stop recording, recognition and
   ///stream.
   static Future stopAudioRecognition() async {
@@ -98,12 +198,28 @@ class TfliteAudio {
   }
 
   ///initialize [loadModel] before calling any other streams and futures.
+  ///Returns a map with the model's int modelHandle. Android keeps several
+  ///models loaded, so loading a model again with the same parameters only
+  ///selects it.
+  ///[warmUpRuns] runs that many inferences on silent input while loading, so
+  ///the first window is not slowed down by one-off setup. The map then also
+  ///has double coldInvokeTime (the first run) and warmInvokeTime (the average
+  ///of the rest), in milliseconds. Android only.
+  ///[useXNNPACK], [allowFp16], [cancellable] and [allowBufferHandleOutput] set
+  ///the interpreter's CPU options. The map's cpuOptions holds the options in
+  ///effect. Android only.
   static Future loadModel(
       {required String model,
       required String label,
       required String inputType,
       bool outputRawScores = false,
       int numThreads = 1,
+      int numOfInterpreters = 0,
+      int warmUpRuns = 0,
+      bool useXNNPACK = true,
+      bool allowFp16 = false,
+      bool cancellable = false,
+      bool allowBufferHandleOutput = false,
       bool isAsset = true}) async {
     return _channel.invokeMethod(
       'loadModel',
@@ -113,8 +229,31 @@ class TfliteAudio {
         'inputType': inputType,
         'outputRawScores': outputRawScores,
         'numThreads': numThreads,
+        'numOfInterpreters': numOfInterpreters,
+        'warmUpRuns': warmUpRuns,
+        'useXNNPACK': useXNNPACK,
+        'allowFp16': allowFp16,
+        'cancellable': cancellable,
+        'allowBufferHandleOutput': allowBufferHandleOutput,
         'isAsset': isAsset,
       },
     );
   }
+
+  ///Unloads a model returned by [loadModel]. Android only.
+  static Future closeModel(int modelHandle) async {
+    return _channel.invokeMethod(
+      'closeModel',
+      {'modelHandle': modelHandle},
+    );
+  }
+
+  ///Memory budget for loaded models. Once loaded models use more than
+  ///[megabytes], the least recently used ones are unloaded. Android only.
+  static Future setModelCacheBudget(int megabytes) async {
+    return _channel.invokeMethod(
+      'setModelCacheBudget',
+      {'megabytes': megabytes},
+    );
+  }
 }